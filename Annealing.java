@@ -0,0 +1,141 @@
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Annealing / threshold-accepting moves on the incremental solver state.
+ *
+ * Instead of a full greedy rebuild per iteration, this makes single-cell moves
+ * whose score delta is already in the neighbour counts:
+ *   - place: a random eligible white turns black (delta = its count ≥ 0);
+ *   - drop:  a random added black turns white (delta = −its count), after which
+ *            a few random whites around it are tried for placement;
+ *   - swap:  a random added black and a random white within 2d of it trade
+ *            places (delta = white's count without the black − black's count).
+ * Gains are always accepted.  A loss of L is accepted with probability
+ * exp(−L/T) in annealing mode, or whenever L ≤ τ in threshold mode.  T and τ
+ * fall with the time spent in the cycle: T geometrically from T0 to T0/1000,
+ * τ linearly from τ0 to 0.  T0 and τ0 are set from the average black count of
+ * a black at the start of the cycle.
+ *
+ * A cycle is run in slices (see run()), so the caller can checkpoint, migrate
+ * and check its stop conditions in between without reheating.  The best state
+ * is saved lazily: only when a losing move is about to leave a new best
+ * behind, or at the end of a slice, so a climb costs one save() rather than
+ * one per step.
+ */
+final class Annealing {
+
+    private final SolverState st;
+    private final int n;
+    private final int d;
+    private final boolean threshold;
+
+    // The current cooling cycle: start() sets it, run() continues it.
+    private long cycleStart, cycleEnd;
+    private double t0, tau0;
+
+    Annealing(SolverState st, boolean threshold) {
+        this.st = st;
+        this.n = st.n;
+        this.d = st.d;
+        this.threshold = threshold;
+    }
+
+    /** Starts a cooling cycle from now until end, heated for the current state. */
+    void start(long end) {
+        cycleStart = System.currentTimeMillis();
+        cycleEnd = end;
+        long blacks = 0;
+        for (int code = 0; code < n * n; code++)
+            if (st.cell[code] == SolverState.BLACK) blacks++;
+        double avgLoss = blacks == 0 ? 1 : Math.max(1, 2.0 * st.score / blacks);
+        // T0: an average drop is accepted about one time in ten.
+        t0 = avgLoss / Math.log(10);
+        tau0 = avgLoss / 2;
+    }
+
+    /** True while the cycle last started has time left. */
+    boolean cooling() {
+        return System.currentTimeMillis() < cycleEnd;
+    }
+
+    /** Ends the current cycle early, e.g. when the state was replaced. */
+    void stop() {
+        cycleEnd = 0;
+    }
+
+    /**
+     * Continues the current cycle until until, the cycle's end, or stop (may be
+     * null, polled with the clock) returns true, whichever comes first; the
+     * schedule follows the whole cycle, so slices of it cool like one run.
+     * Returns the best score seen, which is saved in st.best if it beats
+     * bestScore.
+     */
+    long run(long until, long bestScore, Random rand, BooleanSupplier stop) {
+        long end = Math.min(until, cycleEnd);
+        double span = Math.max(1, cycleEnd - cycleStart);
+        double temp = t0, tau = tau0;
+
+        long best = bestScore;
+        boolean unsaved = false;
+        for (long moves = 0; ; moves++) {
+            if ((moves & 1023) == 0) {
+                long now = System.currentTimeMillis();
+                if (now >= end || (stop != null && stop.getAsBoolean())) break;
+                double f = (now - cycleStart) / span;
+                temp = t0 * Math.pow(1e-3, f);
+                tau = tau0 * (1 - f);
+            }
+            int s = rand.nextInt(n * n);
+            byte state = st.cell[s];
+            if (state == SolverState.WHITE) {
+                if (st.canPlace(s)) st.place(s);
+            } else if (st.removable(s)) {
+                int loss = st.counts.blacks(s);
+                if (rand.nextBoolean()) {
+                    int w = randomNear(s, 2 * d, rand);
+                    if (w < 0 || st.cell[w] != SolverState.WHITE) continue;
+                    st.remove(s);
+                    if (!st.canPlace(w)) { st.place(s); continue; }
+                    int delta = st.counts.blacks(w) - loss;
+                    if (delta < 0 && !accept(-delta, temp, tau, rand)) { st.place(s); continue; }
+                    if (delta < 0 && unsaved) {
+                        // Undo the removal for the save, then redo it.
+                        st.place(s);
+                        st.save();
+                        unsaved = false;
+                        st.remove(s);
+                    }
+                    st.place(w);
+                } else {
+                    if (loss > 0 && !accept(loss, temp, tau, rand)) continue;
+                    if (loss > 0 && unsaved) { st.save(); unsaved = false; }
+                    st.remove(s);
+                    for (int t = 0; t < 4; t++) {
+                        int w = randomNear(s, 2 * d, rand);
+                        if (w >= 0 && st.cell[w] == SolverState.WHITE && st.canPlace(w)) st.place(w);
+                    }
+                }
+            }
+            if (st.score > best) {
+                best = st.score;
+                unsaved = true;
+            }
+        }
+        if (unsaved) st.save();
+        return best;
+    }
+
+    private boolean accept(int loss, double temp, double tau, Random rand) {
+        return threshold ? loss <= tau : rand.nextDouble() < Math.exp(-loss / temp);
+    }
+
+    /** A random cell within distance r of s other than s, or −1 if off the grid. */
+    private int randomNear(int s, int r, Random rand) {
+        int i = s / n + rand.nextInt(2*r + 1) - r;
+        int j = s % n + rand.nextInt(2*r + 1) - r;
+        if (i < 0 || i >= n || j < 0 || j >= n) return -1;
+        int w = i * n + j;
+        return w == s ? -1 : w;
+    }
+}
@@ -1,86 +1,53 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public class Barvanje {
 
-    private static class GridCase {
-        final int n;
-        final int d;
-        final int b;
-        final int c;
-        final List<List<Character>> grid;
-
-        GridCase(int n, int d, int b, int c, List<List<Character>> grid) {
-            this.n = n; // Grid size
-            this.d = d; // Neighbour range
-            this.b = b; // Min neighbouring white blocks
-            this.c = c; // Max neighbouring black blocks
-            this.grid = grid;
-        }
-
-        public String getNumbers() {
-            return String.format("n:%d d:%d b:%d c:%d\n", this.n, this.d, this.b, this.c);
-        }
-    }
-
-    public static void main(String[] args) {
-        List<GridCase> grids = getGrids("Barvanje.txt");
+    // How a worse working state is treated (-Dbarvanje.accept=...): "best" keeps
+    // ruin-and-rebuild, "anneal" / "threshold" run Annealing cycles instead.
+    // The tabu mode is only in BarvanjeParallel.
+    private static final String acceptMode = System.getProperty("barvanje.accept", "best");
+
+    // Workers for the batched greedy fill (see BatchFill); 0 = one placement at a time.
+    private static final int fillThreads = Integer.getInteger("barvanje.fillThreads", 0);
+    private static final ForkJoinPool fillPool = fillThreads > 0 ? new ForkJoinPool(fillThreads) : null;
+
+    // Earlier solutions to continue from (-Dbarvanje.warmStart=file,...); see WarmStart.
+    private static final WarmStart warmStart = new WarmStart(System.getProperty("barvanje.warmStart", ""));
+
+    public static void main(String[] args) throws Exception {
+        if (!Arrays.asList("best", "anneal", "threshold").contains(acceptMode))
+            throw new IllegalArgumentException("unknown -Dbarvanje.accept=" + acceptMode
+                + " (best, anneal or threshold)");
+        SolverMetrics.register();
+        PuzzleFile puzzle = PuzzleFile.open("Barvanje.txt");
+        System.out.println(puzzle.title);
+        SolutionWriter solutions = new SolutionWriter("Barvanje_solution.txt", "Barvanje");
         // No hard time limit per case. Each case runs until no improvement
         // is found for 5 minutes, then moves on to the next.
         long patienceMs = 300_000L; // 5 minutes
-        for (int i = 1; i <= grids.size(); i++) {
+        for (int i = 1; i <= puzzle.size(); i++) {
+            // Each case is parsed only when its turn comes.
+            GridCase gc = puzzle.read(i - 1);
+            GridCase given = new GridCase(gc.caseNum, gc.n, gc.d, gc.b, gc.c, gc.cells.clone());
             long caseLimit = Long.MAX_VALUE;
             long caseStart = System.currentTimeMillis();
-            int score = algorithm(grids.get(i - 1), caseLimit, patienceMs);
+            long score = algorithm(gc, caseLimit, patienceMs);
             long used = System.currentTimeMillis() - caseStart;
             System.out.println(i + ": " + score + "  (" + used/1000 + "s used)");
+            // Independent re-check of the written-back grid (see Validator).
+            Validator.Report report = Validator.check(given, gc.cells);
+            if (!report.valid() || report.score != score)
+                System.out.println(i + " failed validation!"
+                    + (report.listed.isEmpty() ? "" : " " + report.listed.get(0)));
+            // Each finished case goes out in the background.
+            solutions.offer(gc, score, gc.cells);
         }
-        writeSolutions(grids, "Barvanje_solution.txt");
+        solutions.flush();
         System.out.println("Solutions written to Barvanje_solution.txt");
     }
 
-    private static List<GridCase> getGrids(String path) {
-        List<GridCase> grids = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-            System.out.println(br.readLine()); // optional title
-            int gridCount = Integer.parseInt(br.readLine());
-
-            String line;
-            for (int g = 0; g < gridCount; g++) {
-                while ((line = br.readLine()) != null && line.trim().isEmpty()) {
-                    // skip seperators
-                }
-                line = br.readLine(); // read again to skip the grid indexes
-                if (line == null)
-                    break;
-
-                String[] parts = line.trim().split("\\s+");
-                int n = Integer.parseInt(parts[0]);
-                int d = Integer.parseInt(parts[1]);
-                int b = Integer.parseInt(parts[2]);
-                int c = Integer.parseInt(parts[3]);
-
-                List<List<Character>> grid = new ArrayList<>();
-                for (int r = 0; r < n; r++) {
-                    String rowLine = br.readLine();
-                    List<Character> row = new ArrayList<>(rowLine.length());
-                    for (char ch : rowLine.toCharArray()) {
-                        row.add(ch);
-                    }
-                    grid.add(row);
-                }
-                grids.add(new GridCase(n, d, b, c, grid));
-            }
-        } catch (IOException | NumberFormatException e) {
-            e.printStackTrace();
-        }
-        return grids;
-    }
-
     /**
      * Ruin-and-rebuild heuristic solver.
      *
@@ -97,67 +64,44 @@ public class Barvanje {
      *   5. Repeat until the time limit is reached.
      *
      * A "valid" black cell must satisfy:
-     *   - neighWhites >= b  (at least b white neighbours within Chebyshev distance d)
-     *   - neighBlacks <= c  (at most c black neighbours within Chebyshev distance d)
+     *   - whites >= b  (at least b white neighbours within Chebyshev distance d)
+     *   - blacks <= c  (at most c black neighbours within Chebyshev distance d)
+     *
+     * With a warm start for the case, the search and every patience restart
+     * begin from that solution instead of the input grid.
      *
      * @param gridCase  the input grid, modified in-place to hold the best result
      * @param timeLimit milliseconds budget for this case
      * @return          the best score (number of black–black neighbouring pairs)
      */
-    private static int algorithm(GridCase gridCase, long timeLimit, long patienceMs) {
+    private static long algorithm(GridCase gridCase, long timeLimit, long patienceMs) {
         int n = gridCase.n;
         int d = gridCase.d;
-        int b = gridCase.b;
-        int c = gridCase.c;
 
-        // Working copy of the grid (char[][] is faster than List<List<Character>>).
-        // bestGrid stores the highest-scoring state seen across all iterations.
-        char[][] bestGrid = new char[n][n];
-        char[][] grid = new char[n][n];
-        for (int i = 0; i < n; i++)
-            for (int j = 0; j < n; j++) {
-                grid[i][j] = gridCase.grid.get(i).get(j);
-                bestGrid[i][j] = grid[i][j];
-            }
-
-        // neighBlacks[i][j] = number of '#' cells within Chebyshev distance d of (i,j),
-        //                      NOT counting (i,j) itself.
-        // neighWhites[i][j] = same but for '.' cells.
-        // Red ('R') cells are ignored — they count as neither black nor white.
-        // These arrays are kept in sync incrementally throughout the algorithm
-        // (updated whenever a cell changes between '.' and '#').
-        int[][] neighBlacks = new int[n][n];
-        int[][] neighWhites = new int[n][n];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                int r0 = Math.max(0, i-d), r1 = Math.min(n-1, i+d);
-                int c0 = Math.max(0, j-d), c1 = Math.min(n-1, j+d);
-                int bCnt = 0, wCnt = 0;
-                for (int k = r0; k <= r1; k++)
-                    for (int l = c0; l <= c1; l++) {
-                        if (k == i && l == j) continue;
-                        if (grid[k][l] == '#') bCnt++;
-                        else if (grid[k][l] == '.') wCnt++;
-                    }
-                neighBlacks[i][j] = bCnt;
-                neighWhites[i][j] = wCnt;
-            }
+        // Working state in flat arrays indexed by code = i*n+j (see SolverState):
+        // byte cells, narrow counters, and the neighbour counts / constraint index
+        // kept in sync incrementally by place() and remove().
+        // st.best holds the highest-scoring state seen across all iterations;
+        // save() and rollback() move between it and the working grid through
+        // the undo journal, touching only the cells flipped since.
+        byte[] origGrid = gridCase.cells.clone();
+        SolverState st = new SolverState(n, d, gridCase.b, gridCase.c, origGrid, false);
+        // The incumbent to (re)start from: a validated earlier solution if any.
+        byte[] restartGrid = warmStart.start(gridCase.caseNum, n, d, gridCase.b, gridCase.c, origGrid);
+        if (restartGrid != null) {
+            st.load(restartGrid);
+            st.save();
+        } else {
+            restartGrid = origGrid;
         }
 
-        // Score = number of ordered black–black pairs / 2.
-        // Each black cell contributes neighBlacks[i][j] to the sum, but every pair
-        // is counted twice (once from each end), so we halve at the end.
-        int initScore = 0;
-        for (int i = 0; i < n; i++)
-            for (int j = 0; j < n; j++)
-                if (grid[i][j] == '#')
-                    initScore += neighBlacks[i][j];
-        initScore /= 2;
-
+        // Fixed seed; patience restart r reseeds with Seeds.derive(1337, r).
         Random rand = new Random(1337);
+        int restarts = 0;
         long startTime = System.currentTimeMillis();
-        int bestScore = initScore;
-        int currentScore = initScore;
+        // timeLimit may be Long.MAX_VALUE (no limit): clamp instead of overflowing.
+        long endTime = timeLimit > Long.MAX_VALUE - startTime ? Long.MAX_VALUE : startTime + timeLimit;
+        long bestScore = st.score;
         int iters = 0;
 
         // Adaptive patience: for small grids the search space is exhausted
@@ -166,628 +110,176 @@ public class Barvanje {
         long effectivePatience = Math.max(2000L, Math.min(patienceMs / 3, (long) n * n / 4));
         long lastBestImprovement = startTime;
 
-        // maxBucket is the maximum possible neighBlacks value: the full (2d+1)×(2d+1)
-        // window minus the cell itself.  Used to size the bucket queue.
-        int maxBucket = (2*d+1)*(2*d+1);
-
-        // For small grids/windows (n²×window < 100M ops) we re-insert white neighbours
-        // into the bucket queue immediately when their neighBlacks count increases during
-        // the fill propagation.  This keeps the queue perfectly up-to-date and removes
-        // the need for lazy re-insertion at pop time.
-        // For large grids/windows this would flood the queue with billions of entries
-        // (each of ~500K placements touching 6000+ neighbours), so we skip it and
-        // instead re-insert lazily only when a stale entry is discovered at pop time.
-        boolean usePropReinsert = (long) n * n * maxBucket < 100_000_000L;
-
-        // blockingCount[i][j] = how many black cells in (i,j)'s window are "blocking".
-        // A black cell is "blocking" if placing another black in its window would push
-        // it over the c limit or under the b limit.  A white cell (i,j) with
-        // blockingCount > 0 cannot be flipped to black without invalidating an existing
-        // black neighbour.
-        int[][] blockingCount = new int[n][n];
-        boolean[][] isBlocking = new boolean[n][n]; // true if this cell is currently blocking
-
-        // Bucket queue: bkt[p] holds cell codes (i*n+j) of white cells whose
-        // current neighBlacks == p.  This gives O(1) insert and pop, replacing the
-        // O(log N) PriorityQueue.  topBucket tracks the highest non-empty bucket so
-        // we always grab the best candidate first.
-        int initCap = Math.max(16, n * n / maxBucket * 4);
-        int[][] bkt = new int[maxBucket][initCap];
-        int[] bktSz = new int[maxBucket];
-
-        // Periodic full reset is O(n²×window); skip it for large cases where that
-        // would cost several seconds per reset.
-        long resetCost = (long) maxBucket * n * n;
-        boolean useReset = resetCost < 200_000_000L;
+        // Cells that may have become eligible since the last fill: everything at
+        // first, afterwards only the surroundings of what was removed.
+        DirtyRegion dirty = new DirtyRegion(n, 2 * d);
+        // Phases 1 and 2 of every iteration (see GreedyFill); batched with
+        // -Dbarvanje.fillThreads=N.
+        GreedyFill fill = new GreedyFill(st, dirty, null, fillPool);
+        SwapSearch swaps = new SwapSearch(st, dirty);
+        EjectionChains chains = new EjectionChains(st, dirty, swaps);
+        Annealing annealing = acceptMode.equals("anneal") || acceptMode.equals("threshold")
+                            ? new Annealing(st, acceptMode.equals("threshold")) : null;
 
         boolean timeUp = false;
-        int placements = 0; // counts total placements; used to throttle time checks
         long lastImprovementTime = startTime;
-
-        // Compute blockingCount once from the initial grid state.
-        // From here on it is maintained incrementally (no full recompute each iteration).
-        for (int i = 0; i < n; i++)
-            for (int j = 0; j < n; j++)
-                if (grid[i][j] == '#' && (neighBlacks[i][j] >= c || neighWhites[i][j] <= b)) {
-                    isBlocking[i][j] = true;
-                    int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                    int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                    // Tell every cell in this black cell's window that it has a blocking neighbour.
-                    for (int k = r0; k <= r1; k++)
-                        for (int l = c0; l <= c1; l++) {
-                            if (k==i && l==j) continue;
-                            blockingCount[k][l]++;
-                        }
+        // Counters for JMX and JFR (see SolverMetrics); the only thread is t0.
+        SolverMetrics.Probe probe = SolverMetrics.probe(gridCase.caseNum, 0);
+
+        try {
+            // ── Main ruin-and-rebuild loop ────────────────────────────────────────────
+            while (!timeUp && System.currentTimeMillis() - startTime < timeLimit
+                           && System.currentTimeMillis() - lastBestImprovement < patienceMs) {
+                iters++;
+                probe.iteration(bestScore);
+
+                // ── Patience-based restart ────────────────────────────────────────
+                // When no improvement has been found for effectivePatience ms,
+                // restart from the incumbent with a new PRNG seed.  This
+                // gives the greedy completely different tie-breaking choices and
+                // lets it discover fundamentally different solution structures.
+                if (System.currentTimeMillis() - lastImprovementTime >= effectivePatience) {
+                    long t = System.nanoTime();
+                    rand = new Random(Seeds.derive(1337, ++restarts));
+                    st.load(restartGrid);
+                    dirty.all();
+                    swaps.lookAll();
+                    lastImprovementTime = System.currentTimeMillis();
+                    probe.add(SolverMetrics.RESTARTS, 1);
+                    probe.lap(SolverMetrics.RESET_NS, t);
                 }
 
-        // ── Main ruin-and-rebuild loop ────────────────────────────────────────────
-        while (!timeUp && System.currentTimeMillis() - startTime < timeLimit
-                       && System.currentTimeMillis() - lastBestImprovement < patienceMs) {
-            iters++;
-
-            // ── Patience-based restart ────────────────────────────────────────
-            // When no improvement has been found for effectivePatience ms,
-            // restart from the original grid with a fresh PRNG seed.  This
-            // gives the greedy completely different tie-breaking choices and
-            // lets it discover fundamentally different solution structures.
-            if (System.currentTimeMillis() - lastImprovementTime >= effectivePatience) {
-                rand = new Random(System.nanoTime());
-                currentScore = initScore;
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++)
-                        grid[i][j] = gridCase.grid.get(i).get(j);
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++) {
-                        int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                        int c0x = Math.max(0,j-d), c1x = Math.min(n-1,j+d);
-                        int bCnt = 0, wCnt = 0;
-                        for (int k = r0; k <= r1; k++)
-                            for (int l = c0x; l <= c1x; l++) {
-                                if (k == i && l == j) continue;
-                                if (grid[k][l] == '#') bCnt++;
-                                else if (grid[k][l] == '.') wCnt++;
-                            }
-                        neighBlacks[i][j] = bCnt;
-                        neighWhites[i][j] = wCnt;
-                    }
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++) {
-                        blockingCount[i][j] = 0;
-                        isBlocking[i][j] = false;
-                    }
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++)
-                        if (grid[i][j] == '#' && (neighBlacks[i][j] >= c || neighWhites[i][j] <= b)) {
-                            isBlocking[i][j] = true;
-                            int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                            int c0x = Math.max(0,j-d), c1x = Math.min(n-1,j+d);
-                            for (int k = r0; k <= r1; k++)
-                                for (int l = c0x; l <= c1x; l++) {
-                                    if (k==i && l==j) continue;
-                                    blockingCount[k][l]++;
-                                }
-                        }
-                lastImprovementTime = System.currentTimeMillis();
-            }
-
-            // ── Phase 1: fill the bucket queue ───────────────────────────────────
-            // Reset all bucket sizes, then insert every white cell into the bucket
-            // corresponding to its current neighBlacks count.
-            // Encoding: cell (i,j) → code = i*n+j  (decoded: i=code/n, j=code%n).
-            for (int p = 0; p < maxBucket; p++) bktSz[p] = 0;
-            int topBucket = 0;
-            for (int i = 0; i < n; i++)
-                for (int j = 0; j < n; j++)
-                    if (grid[i][j] == '.') {
-                        int p = neighBlacks[i][j];
-                        // Grow the bucket's backing array if full (amortised O(1)).
-                        if (bktSz[p] == bkt[p].length) bkt[p] = java.util.Arrays.copyOf(bkt[p], bkt[p].length * 2);
-                        bkt[p][bktSz[p]++] = i * n + j;
-                        if (p > topBucket) topBucket = p;
-                    }
-
-            // ── Phase 2: greedy fill ──────────────────────────────────────────────
-            // Each iteration we place the white cell with the highest neighBlacks into
-            // black, because that maximises the number of new black–black pairs created
-            // by this single placement.  We stop when no eligible cell remains.
-            while (true) {
-                // Walk topBucket downward until we find a non-empty bucket.
-                while (topBucket >= 0 && bktSz[topBucket] == 0) topBucket--;
-                if (topBucket < 0) break; // no candidates left → done filling
-
-                // Pick a random entry from the top bucket (swap-and-pop, O(1)).
-                // Randomness here ensures different greedy paths across iterations
-                // even when many cells tie on neighBlacks, which is common.
-                int idx = rand.nextInt(bktSz[topBucket]);
-                int code = bkt[topBucket][idx];
-                bkt[topBucket][idx] = bkt[topBucket][--bktSz[topBucket]];
-                int pi = code / n, pj = code % n;
-
-                // ── Lazy deletion ─────────────────────────────────────────────────
-                // The queue may contain stale entries because:
-                //   (a) the cell was already placed ('#') earlier in this fill pass
-                //   (b) a previous placement made it ineligible (too few whites / too
-                //       many blacks / a blocker appeared in its window)
-                //   (c) its neighBlacks increased after insertion, so there is a newer
-                //       entry in a higher bucket (only relevant in lazy-reinsert mode)
-                // We discard (a) and (b) silently, and handle (c) by re-inserting at
-                // the correct bucket so it can be picked up in a future pop.
-                if (grid[pi][pj] != '.') continue;
-                if (neighWhites[pi][pj] < b || neighBlacks[pi][pj] > c || blockingCount[pi][pj] > 0) continue;
-                if (neighBlacks[pi][pj] != topBucket) {
-                    // Case (c): newer/higher-priority entry already exists for this cell
-                    // in propagation mode.  In lazy mode we must re-insert it ourselves.
-                    if (!usePropReinsert) {
-                        int p = neighBlacks[pi][pj];
-                        if (p < maxBucket) {
-                            if (bktSz[p] == bkt[p].length) bkt[p] = java.util.Arrays.copyOf(bkt[p], bkt[p].length * 2);
-                            bkt[p][bktSz[p]++] = code;
-                            if (p > topBucket) topBucket = p;
-                        }
-                    }
-                    continue;
+                long fillStart = System.currentTimeMillis();
+                long phaseStart = System.nanoTime();
+                long queued = fill.queued, placed = fill.placements, pops = fill.pops;
+
+                // ── Phases 1–2: queue the dirty region, greedy fill ──────────────────
+                if (!fill.run(rand, endTime, iters)) timeUp = true;
+                probe.add(SolverMetrics.FILLS, 1);
+                probe.add(SolverMetrics.QUEUED, fill.queued - queued);
+                probe.add(SolverMetrics.PLACEMENTS, fill.placements - placed);
+                probe.add(SolverMetrics.POPS, fill.pops - pops);
+                phaseStart = probe.lap(SolverMetrics.FILL_NS, phaseStart);
+
+                // ── Phase 1b: swap-based local search ─────────────────────────────────
+                // Try removing one added black cell and placing a different white cell
+                // that becomes eligible after the removal.  Accept if net score improves.
+                // This finds improvements that pure ruin-and-rebuild misses because it
+                // can make coordinated single-cell swaps.  Pre-existing '#' cells are
+                // never swapped out.  Only blacks near something that changed since
+                // they were last examined are looked at again (see SwapSearch).
+                // The search gets at most as long as the fill just took (20 ms at
+                // least): after a large ruin on case 12 a full pass is minutes of
+                // work, and the look bits it doesn't get to carry over.
+                long now = System.currentTimeMillis();
+                long slice = Math.max(20, now - fillStart);
+                long swapAttempts = swaps.attempts, swapAccepts = swaps.accepts;
+                swaps.run(Math.min(endTime, now + slice));
+                probe.add(SolverMetrics.SWAP_ATTEMPTS, swaps.attempts - swapAttempts);
+                probe.add(SolverMetrics.SWAP_ACCEPTS, swaps.accepts - swapAccepts);
+                phaseStart = probe.lap(SolverMetrics.SWAP_NS, phaseStart);
+
+                // ── Phase 1c (every 4th iter): ejection chains ────────────────────
+                // Take out one or two blacks and put in one more than that, when the
+                // score rises (see EjectionChains).  Same time slice as the swaps.
+                if (iters % 4 == 3) {
+                    long chainAttempts = chains.attempts, chainAccepts = chains.accepts;
+                    chains.run(Math.min(endTime, System.currentTimeMillis() + slice), rand);
+                    probe.add(SolverMetrics.CHAIN_ATTEMPTS, chains.attempts - chainAttempts);
+                    probe.add(SolverMetrics.CHAIN_ACCEPTS, chains.accepts - chainAccepts);
+                    phaseStart = probe.lap(SolverMetrics.CHAIN_NS, phaseStart);
                 }
+                if (System.currentTimeMillis() - startTime >= timeLimit) timeUp = true;
 
-                // ── Place the cell ────────────────────────────────────────────────
-                // Adding neighBlacks[pi][pj] to the score is equivalent to: for every
-                // existing black neighbour, one new pair is formed.  This is the
-                // incremental version of counting pairs — no full recount needed.
-                currentScore += neighBlacks[pi][pj];
-                grid[pi][pj] = '#';
-
-                // Amortised time check: calling System.currentTimeMillis() on every
-                // placement would add significant overhead.  Checking every 1024
-                // placements (bitmask trick) is cheap and precise enough.
-                if ((++placements & 1023) == 0 && System.currentTimeMillis() - startTime >= timeLimit) {
-                    timeUp = true;
-                    break;
+                if (st.score > bestScore) {
+                    bestScore = st.score;
+                    lastImprovementTime = System.currentTimeMillis();
+                    lastBestImprovement = lastImprovementTime;
+                    st.save();
                 }
 
-                // ── Propagate the placement to all cells in the window ────────────
-                // Every cell (k,l) within Chebyshev distance d of (pi,pj) now has one
-                // more black neighbour and one fewer white neighbour.
-                int r0 = Math.max(0,pi-d), r1 = Math.min(n-1,pi+d);
-                int c0 = Math.max(0,pj-d), c1 = Math.min(n-1,pj+d);
-
-                // ── Self-blocking check ───────────────────────────────────────────
-                // The placed cell itself may be at a constraint boundary (exactly b
-                // whites or exactly c blacks remaining).  The propagation loop below
-                // only checks EXISTING black neighbours, so (pi,pj) would never be
-                // marked here without this explicit check.  If omitted, a subsequent
-                // placement inside (pi,pj)'s window can legally pass the blockingCount
-                // guard and then silently reduce (pi,pj)'s white count below b.
-                if (!isBlocking[pi][pj] && (neighBlacks[pi][pj] >= c || neighWhites[pi][pj] <= b)) {
-                    isBlocking[pi][pj] = true;
-                    for (int x = r0; x <= r1; x++)
-                        for (int y = c0; y <= c1; y++) {
-                            if (x==pi && y==pj) continue;
-                            blockingCount[x][y]++;
-                        }
-                }
-
-                for (int k = r0; k <= r1; k++)
-                    for (int l = c0; l <= c1; l++) {
-                        if (k==pi && l==pj) continue;
-                        neighBlacks[k][l]++;
-                        neighWhites[k][l]--;
-
-                        // In propagation-reinsert mode: the white cell (k,l) just gained
-                        // a black neighbour, so its priority increased.  Re-insert it at
-                        // the new (higher) bucket so future pops see the updated priority.
-                        // In lazy mode this is skipped — the stale entry will be
-                        // re-inserted when it is eventually popped (see lazy deletion above).
-                        if (usePropReinsert && grid[k][l] == '.') {
-                            int p = neighBlacks[k][l];
-                            if (p < maxBucket) {
-                                if (bktSz[p] == bkt[p].length) bkt[p] = java.util.Arrays.copyOf(bkt[p], bkt[p].length * 2);
-                                bkt[p][bktSz[p]++] = k * n + l;
-                                if (p > topBucket) topBucket = p;
-                            }
-                        }
-
-                        // If an existing black cell (k,l) just became "blocking" (i.e.
-                        // its neighBlacks hit the limit c, or its neighWhites hit b),
-                        // mark it and increment blockingCount for every cell in its window.
-                        // Those cells can no longer be flipped to black without violating
-                        // the constraint of (k,l).
-                        if (grid[k][l] == '#' && !isBlocking[k][l]) {
-                            if (neighBlacks[k][l] >= c || neighWhites[k][l] <= b) {
-                                isBlocking[k][l] = true;
-                                int r2 = Math.max(0,k-d), r3 = Math.min(n-1,k+d);
-                                int c2 = Math.max(0,l-d), c3 = Math.min(n-1,l+d);
-                                for (int x = r2; x <= r3; x++)
-                                    for (int y = c2; y <= c3; y++) {
-                                        if (x==k && y==l) continue;
-                                        blockingCount[x][y]++;
-                                    }
-                            }
-                        }
-                    }
-            }
-            // ── End greedy fill ───────────────────────────────────────────────────
-
-            // ── Phase 1b: swap-based local search ─────────────────────────────────
-            // Try removing one added black cell and placing a different white cell
-            // that becomes eligible after the removal.  Accept if net score improves.
-            // This finds improvements that pure ruin-and-rebuild misses because it
-            // can make coordinated single-cell swaps.
-            boolean improved = true;
-            while (improved) {
-                improved = false;
-                for (int si = 0; si < n && !timeUp; si++)
-                    for (int sj = 0; sj < n && !timeUp; sj++) {
-                        if (grid[si][sj] != '#') continue;
-                        int removeLoss = neighBlacks[si][sj]; // pairs lost by removing (si,sj)
-
-                        // Temporarily remove (si,sj)
-                        grid[si][sj] = '.';
-                        int sr0 = Math.max(0,si-d), sr1 = Math.min(n-1,si+d);
-                        int sc0 = Math.max(0,sj-d), sc1 = Math.min(n-1,sj+d);
-                        for (int k = sr0; k <= sr1; k++)
-                            for (int l = sc0; l <= sc1; l++) {
-                                if (k==si && l==sj) continue;
-                                neighBlacks[k][l]--;
-                                neighWhites[k][l]++;
-                            }
-
-                        // Try placing each white cell in the extended neighborhood
-                        // (within 2*d so they could interact with (si,sj)'s old neighbors)
-                        int bestGain = removeLoss; // must beat this to be worth it
-                        int bestPi = -1, bestPj = -1;
-                        int er0 = Math.max(0,si-2*d), er1 = Math.min(n-1,si+2*d);
-                        int ec0 = Math.max(0,sj-2*d), ec1 = Math.min(n-1,sj+2*d);
-                        for (int wi = er0; wi <= er1; wi++)
-                            for (int wj = ec0; wj <= ec1; wj++) {
-                                if (grid[wi][wj] != '.') continue;
-                                // Check if (wi,wj) can be placed as black
-                                int wBlacks = neighBlacks[wi][wj];
-                                int wWhites = neighWhites[wi][wj];
-                                if (wWhites < b || wBlacks > c) continue;
-                                // Check blocking: would placing (wi,wj) violate any neighbor?
-                                boolean blocked = false;
-                                int wr0 = Math.max(0,wi-d), wr1 = Math.min(n-1,wi+d);
-                                int wc0 = Math.max(0,wj-d), wc1 = Math.min(n-1,wj+d);
-                                for (int k = wr0; k <= wr1 && !blocked; k++)
-                                    for (int l = wc0; l <= wc1 && !blocked; l++) {
-                                        if (k==wi && l==wj) continue;
-                                        if (grid[k][l] == '#') {
-                                            if (neighBlacks[k][l] >= c) blocked = true;
-                                            if (neighWhites[k][l] <= b) blocked = true;
-                                        }
-                                    }
-                                if (blocked) continue;
-                                if (wBlacks > bestGain) {
-                                    bestGain = wBlacks;
-                                    bestPi = wi;
-                                    bestPj = wj;
-                                }
-                            }
-
-                        if (bestPi >= 0) {
-                            // Accept the swap: remove (si,sj), place (bestPi,bestPj)
-                            currentScore -= removeLoss;
-                            currentScore += bestGain;
-                            // Update blocking for removal of (si,sj)
-                            if (isBlocking[si][sj]) {
-                                isBlocking[si][sj] = false;
-                                for (int k = sr0; k <= sr1; k++)
-                                    for (int l = sc0; l <= sc1; l++) {
-                                        if (k==si && l==sj) continue;
-                                        blockingCount[k][l]--;
-                                    }
-                            }
-                            // Update blocking for neighbors that might un-block
-                            for (int k = sr0; k <= sr1; k++)
-                                for (int l = sc0; l <= sc1; l++) {
-                                    if (k==si && l==sj) continue;
-                                    if (grid[k][l] == '#' && isBlocking[k][l]
-                                            && neighBlacks[k][l] < c && neighWhites[k][l] > b) {
-                                        isBlocking[k][l] = false;
-                                        int r2 = Math.max(0,k-d), r3 = Math.min(n-1,k+d);
-                                        int c2 = Math.max(0,l-d), c3 = Math.min(n-1,l+d);
-                                        for (int x = r2; x <= r3; x++)
-                                            for (int y = c2; y <= c3; y++) {
-                                                if (x==k && y==l) continue;
-                                                blockingCount[x][y]--;
-                                            }
-                                    }
-                                }
-                            // Place (bestPi,bestPj)
-                            grid[bestPi][bestPj] = '#';
-                            int pr0 = Math.max(0,bestPi-d), pr1 = Math.min(n-1,bestPi+d);
-                            int pc0 = Math.max(0,bestPj-d), pc1 = Math.min(n-1,bestPj+d);
-                            if (neighBlacks[bestPi][bestPj] >= c || neighWhites[bestPi][bestPj] <= b) {
-                                isBlocking[bestPi][bestPj] = true;
-                                for (int x = pr0; x <= pr1; x++)
-                                    for (int y = pc0; y <= pc1; y++) {
-                                        if (x==bestPi && y==bestPj) continue;
-                                        blockingCount[x][y]++;
-                                    }
-                            }
-                            for (int k = pr0; k <= pr1; k++)
-                                for (int l = pc0; l <= pc1; l++) {
-                                    if (k==bestPi && l==bestPj) continue;
-                                    neighBlacks[k][l]++;
-                                    neighWhites[k][l]--;
-                                    if (grid[k][l] == '#' && !isBlocking[k][l]) {
-                                        if (neighBlacks[k][l] >= c || neighWhites[k][l] <= b) {
-                                            isBlocking[k][l] = true;
-                                            int r2 = Math.max(0,k-d), r3 = Math.min(n-1,k+d);
-                                            int c2 = Math.max(0,l-d), c3 = Math.min(n-1,l+d);
-                                            for (int x = r2; x <= r3; x++)
-                                                for (int y = c2; y <= c3; y++) {
-                                                    if (x==k && y==l) continue;
-                                                    blockingCount[x][y]++;
-                                                }
-                                        }
-                                    }
-                                }
-                            improved = true;
-                        } else {
-                            // Revert removal of (si,sj)
-                            grid[si][sj] = '#';
-                            for (int k = sr0; k <= sr1; k++)
-                                for (int l = sc0; l <= sc1; l++) {
-                                    if (k==si && l==sj) continue;
-                                    neighBlacks[k][l]++;
-                                    neighWhites[k][l]--;
-                                }
-                        }
-
-                        if ((++placements & 1023) == 0 && System.currentTimeMillis() - startTime >= timeLimit) {
-                            timeUp = true;
-                        }
-                    }
-            }
-
-            if (currentScore > bestScore) {
-                bestScore = currentScore;
-                lastImprovementTime = System.currentTimeMillis();
-                lastBestImprovement = lastImprovementTime;
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++)
-                        bestGrid[i][j] = grid[i][j];
-            }
-
-            // ── Phase 3 (every 20 iters): hard reset to best ─────────────────────
-            // After many ruin-rebuild cycles the working grid drifts away from the
-            // global best and incremental errors in blockingCount can accumulate.
-            // Resetting to bestGrid gives a clean, verified starting point and
-            // forces exploration of a different region of the search space.
-            // Skipped for large cases (n²×window ≥ 200M) where the full
-            // blockingCount recompute below would take too long.
-            if (useReset && iters % 20 == 0) {
-                currentScore = bestScore;
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++) {
-                        char prev = grid[i][j];
-                        char next = bestGrid[i][j];
-                        if (prev == next) continue;
-                        // Before changing the cell, undo its blocking contribution if any,
-                        // so blockingCount stays correct while we're mid-reset.
-                        if (prev == '#' && isBlocking[i][j]) {
-                            isBlocking[i][j] = false;
-                            int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                            int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                            for (int k = r0; k <= r1; k++)
-                                for (int l = c0; l <= c1; l++) {
-                                    if (k==i && l==j) continue;
-                                    blockingCount[k][l]--;
-                                }
-                        }
-                        grid[i][j] = next;
-                        int diff = (next == '#') ? 1 : -1;
-                        int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                        int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                        for (int k = r0; k <= r1; k++)
-                            for (int l = c0; l <= c1; l++) {
-                                if (k==i && l==j) continue;
-                                neighBlacks[k][l] += diff;
-                                neighWhites[k][l] -= diff;
-                            }
+                // ── Phase 3a (-Dbarvanje.accept=anneal|threshold): cooling cycle ──
+                // Replaces ruin-and-rebuild with single-cell moves under a time-based
+                // schedule (see Annealing).  One cycle spans the patience window, so
+                // it reheats as long as cycles keep finding a new best.
+                if (annealing != null) {
+                    now = System.currentTimeMillis();
+                    long cycleEnd = patienceMs > endTime - now ? endTime : now + patienceMs;
+                    annealing.start(cycleEnd);
+                    long annealed = annealing.run(cycleEnd, bestScore, rand, null);
+                    probe.lap(SolverMetrics.ANNEAL_NS, phaseStart);
+                    if (annealed > bestScore) {
+                        bestScore = annealed;
+                        lastImprovementTime = System.currentTimeMillis();
+                        lastBestImprovement = lastImprovementTime;
                     }
-                // After touching many cells the incremental blockingCount updates above
-                // may have small errors (cells changed order matters for blocking status).
-                // Do a full clean recompute from the settled grid state.
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++) {
-                        blockingCount[i][j] = 0;
-                        isBlocking[i][j] = false;
-                    }
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++)
-                        if (grid[i][j] == '#' && (neighBlacks[i][j] >= c || neighWhites[i][j] <= b)) {
-                            isBlocking[i][j] = true;
-                            int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                            int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                            for (int k = r0; k <= r1; k++)
-                                for (int l = c0; l <= c1; l++) {
-                                    if (k==i && l==j) continue;
-                                    blockingCount[k][l]++;
-                                }
-                        }
-                continue; // skip ruin this iteration — go straight to next fill
-            }
-
-            // ── Phase 4: ruin ─────────────────────────────────────────────────────
-            // Erase a random rectangular block of black cells from the working grid.
-            // Block size is chosen randomly between n/8 and n/3, giving both fine and
-            // coarse perturbations.  Only cells that were added by the algorithm
-            // (not pre-existing '#' in the original input) are removed.
-            // All neighbour counts and blocking state are updated incrementally.
-            int minBlock = 1;
-            int maxBlock = Math.max(minBlock + 1, n / 3);
-            int blockSize = minBlock + rand.nextInt(maxBlock - minBlock + 1);
-            int startI = rand.nextInt(Math.max(1, n - blockSize + 1));
-            int startJ = rand.nextInt(Math.max(1, n - blockSize + 1));
-
-            for (int i = startI; i < startI + blockSize && i < n; i++)
-                for (int j = startJ; j < startJ + blockSize && j < n; j++)
-                    if (grid[i][j] == '#' && gridCase.grid.get(i).get(j) != '#') {
-                        // Remove the pair contribution of this cell before erasing it.
-                        // neighBlacks[i][j] equals the number of existing black neighbours,
-                        // each of which forms one pair with (i,j) — sum = pairs lost.
-                        currentScore -= neighBlacks[i][j];
-
-                        // If this cell was blocking its neighbours, undo that contribution
-                        // before we remove it so blockingCount stays accurate.
-                        if (isBlocking[i][j]) {
-                            isBlocking[i][j] = false;
-                            int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                            int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                            for (int k = r0; k <= r1; k++)
-                                for (int l = c0; l <= c1; l++) {
-                                    if (k==i && l==j) continue;
-                                    blockingCount[k][l]--;
-                                }
-                        }
-
-                        grid[i][j] = '.';
-
-                        int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                        int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                        for (int k = r0; k <= r1; k++)
-                            for (int l = c0; l <= c1; l++) {
-                                if (k==i && l==j) continue;
-                                neighBlacks[k][l]--;
-                                neighWhites[k][l]++;
-                                // A black neighbour (k,l) that was previously blocking
-                                // may now be safe again because it just lost a black
-                                // neighbour (us).  If it no longer violates either
-                                // constraint, un-mark it and decrement blockingCount
-                                // for everything in its window.
-                                if (grid[k][l] == '#' && isBlocking[k][l]
-                                        && neighBlacks[k][l] < c && neighWhites[k][l] > b) {
-                                    isBlocking[k][l] = false;
-                                    int r2 = Math.max(0,k-d), r3 = Math.min(n-1,k+d);
-                                    int c2 = Math.max(0,l-d), c3 = Math.min(n-1,l+d);
-                                    for (int x = r2; x <= r3; x++)
-                                        for (int y = c2; y <= c3; y++) {
-                                            if (x==k && y==l) continue;
-                                            blockingCount[x][y]--;
-                                        }
-                                }
-                            }
-                    }
-        }
-        // ── End main loop ─────────────────────────────────────────────────────────
-
-        // Write the best grid back into gridCase so the caller can display/verify it.
-        for (int i = 0; i < n; i++) {
-            List<Character> row = gridCase.grid.get(i);
-            for (int j = 0; j < n; j++)
-                row.set(j, bestGrid[i][j]);
-        }
-        return bestScore;
-    }
-
-    /**
-     * Validity per statement: every BLACK cell must have at least b nearby WHITE
-     * cells ('.')
-     * and at most c nearby BLACK cells ('#') within Chebyshev distance d (excluding
-     * itself).
-     * Red cells ('R') are ignored (neither white nor black).
-     */
-    private static boolean checkGrid(GridCase grids) {
-        List<List<Character>> grid = grids.grid;
-        int n = grids.n;
-
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (grid.get(i).get(j) != '#') {
+                    dirty.all();
+                    swaps.lookAll();
+                    if (System.currentTimeMillis() >= endTime) timeUp = true;
                     continue;
                 }
 
-                int blackNearby = 0;
-                int whiteNearby = 0;
-
-                int r0 = Math.max(0, i - grids.d);
-                int r1 = Math.min(n - 1, i + grids.d);
-                int c0 = Math.max(0, j - grids.d);
-                int c1 = Math.min(n - 1, j + grids.d);
-
-                for (int r = r0; r <= r1; r++) {
-                    List<Character> row = grid.get(r);
-                    for (int c = c0; c <= c1; c++) {
-                        if (r == i && c == j) {
-                            continue;
-                        }
-                        char cell = row.get(c);
-                        if (cell == '#') {
-                            blackNearby++;
-                        } else if (cell == '.') {
-                            whiteNearby++;
-                        }
-                    }
+                // ── Phase 3 (every 20 iters): hard reset to best ─────────────────────
+                // After many ruin-rebuild cycles the working grid drifts away from the
+                // global best.  Resetting to it gives a clean, verified starting point
+                // and forces exploration of a different region of the search space.
+                // rollback() undoes only the journaled flips since the last save (or
+                // rebuilds through the sliding window sums if the journal overflowed),
+                // so it runs on every case.
+                if (iters % 20 == 0) {
+                    long t = System.nanoTime();
+                    st.rollback();
+                    dirty.all();
+                    swaps.lookAll();
+                    probe.add(SolverMetrics.ROLLBACKS, 1);
+                    probe.lap(SolverMetrics.RESET_NS, t);
+                    continue; // skip ruin this iteration — go straight to next fill
                 }
 
-                if (whiteNearby < grids.b) {
-                    System.out.printf("Not enough white cells around BLACK [%d, %d]: %d < %d\n", i, j, whiteNearby,
-                            grids.b);
-                    return false;
-                }
-                if (blackNearby > grids.c) {
-                    System.out.printf("Too many black cells around BLACK [%d, %d]: %d > %d\n", i, j, blackNearby,
-                            grids.c);
-                    return false;
-                }
-            }
-        }
-        return true;
-    }
-
-    private static long countCloseBlackPairs(GridCase gridCase) {
-        List<List<Character>> grid = gridCase.grid;
-        int n = gridCase.n;
-        long pairs = 0;
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (grid.get(i).get(j) != '#') {
-                    continue;
-                }
-                int r0 = Math.max(0, i - gridCase.d);
-                int r1 = Math.min(n - 1, i + gridCase.d);
-                int c0 = Math.max(0, j - gridCase.d);
-                int c1 = Math.min(n - 1, j + gridCase.d);
-                for (int r = r0; r <= r1; r++) {
-                    List<Character> row = grid.get(r);
-                    for (int c = c0; c <= c1; c++) {
-                        if (r == i && c == j) {
-                            continue;
+                // ── Phase 4: ruin ─────────────────────────────────────────────────────
+                // Erase a random rectangular block of black cells from the working grid.
+                // Block size is chosen randomly between 1 and n/3, giving both fine and
+                // coarse perturbations.  Only cells that were added by the algorithm
+                // (not pre-existing '#' in the original input) are removed.
+                // remove() updates all neighbour counts, slack and the score
+                // incrementally.
+                long ruinStart = System.nanoTime();
+                int ruined = 0;
+                int minBlock = 1;
+                int maxBlock = Math.max(minBlock + 1, n / 3);
+                int blockSize = minBlock + rand.nextInt(maxBlock - minBlock + 1);
+                int startI = rand.nextInt(Math.max(1, n - blockSize + 1));
+                int startJ = rand.nextInt(Math.max(1, n - blockSize + 1));
+
+                for (int i = startI; i < startI + blockSize && i < n; i++)
+                    for (int j = startJ; j < startJ + blockSize && j < n; j++)
+                        if (st.removable(i * n + j)) {
+                            st.remove(i * n + j);
+                            ruined++;
                         }
-                        if (row.get(c) == '#') {
-                            pairs++;
-                        }
-                    }
-                }
+                dirty.markRect(startI, Math.min(n, startI + blockSize) - 1,
+                               startJ, Math.min(n, startJ + blockSize) - 1);
+                swaps.changed(startI, Math.min(n, startI + blockSize) - 1,
+                              startJ, Math.min(n, startJ + blockSize) - 1);
+                probe.ruin(Ruin.RECT, ruined);
+                probe.lap(SolverMetrics.RUIN_NS, ruinStart);
             }
+            // ── End main loop ─────────────────────────────────────────────────────────
+        } finally {
+            // Also when the run throws, so the probe does not stay live.
+            probe.close(bestScore);
         }
-        return pairs / 2;
-    }
 
-    private static void writeSolutions(List<GridCase> grids, String path) {
-        try (java.io.PrintWriter pw = new java.io.PrintWriter(new java.io.FileWriter(path))) {
-            pw.println("Barvanje");
-            pw.println(grids.size());
-            for (int i = 0; i < grids.size(); i++) {
-                GridCase g = grids.get(i);
-                pw.println();
-                pw.println(i + 1);
-                pw.println(g.n + " " + g.d + " " + g.b + " " + g.c);
-                for (List<Character> row : g.grid) {
-                    for (char cell : row) pw.print(cell);
-                    pw.println();
-                }
-            }
-        } catch (java.io.IOException e) {
-            e.printStackTrace();
-        }
+        // Write the best grid back into gridCase so the caller can display/verify it.
+        System.arraycopy(st.best, 0, gridCase.cells, 0, n * n);
+        return bestScore;
     }
 
     private static void displayGrid(GridCase grids) {
         System.out.printf(grids.getNumbers());
-        for (List<Character> row : grids.grid) {
-            for (char cell : row) {
+        for (int r = 0; r < grids.n; r++) {
+            for (int j = 0; j < grids.n; j++) {
+                char cell = SolverState.decode(grids.cells[r * grids.n + j]);
                 switch (cell) {
                     case '.':
                         System.out.print("⬜ ");
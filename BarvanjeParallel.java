@@ -1,47 +1,136 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BarvanjeParallel {
 
-    private static class GridCase {
-        final int n;
-        final int d;
-        final int b;
-        final int c;
-        final List<List<Character>> grid;
-
-        GridCase(int n, int d, int b, int c, List<List<Character>> grid) {
-            this.n = n;
-            this.d = d;
-            this.b = b;
-            this.c = c;
-            this.grid = grid;
-        }
-
-        public String getNumbers() {
-            return String.format("n:%d d:%d b:%d c:%d\n", this.n, this.d, this.b, this.c);
-        }
-    }
-
     private static class AlgorithmResult {
         final long score;
-        final char[][] bestGrid;
-        AlgorithmResult(long score, char[][] bestGrid) {
+        final byte[] bestGrid;  // cell states, code = i*n+j
+        AlgorithmResult(long score, byte[] bestGrid) {
             this.score = score;
             this.bestGrid = bestGrid;
         }
     }
 
+    /**
+     * Best score of one case across its threads, the score at which they
+     * stop, and optionally the best score over time.
+     */
+    private static final class SharedBest {
+        final AtomicLong score = new AtomicLong(Long.MIN_VALUE);
+        final long target;
+        final ScoreCurve curve;  // null: not recorded
+
+        SharedBest(long target, ScoreCurve curve) {
+            this.target = target;
+            this.curve = curve;
+        }
+
+        void offer(long s) {
+            if (s <= score.get()) return;
+            long prev = score.getAndAccumulate(s, Math::max);
+            if (curve != null && s > prev) curve.add(s);
+        }
+
+        boolean reached() {
+            return score.get() >= target;
+        }
+    }
+
+    // Keep each thread's counters in direct memory instead of the Java heap
+    // (-Dbarvanje.offHeap=true); useful when many threads share a small -Xmx.
+    private static final boolean offHeapState = Boolean.getBoolean("barvanje.offHeap");
+
+    // How a worse working state is treated (-Dbarvanje.accept=...): "best" keeps
+    // ruin-and-rebuild, "anneal" / "threshold" run Annealing cycles instead, and
+    // "tabu" keeps ruin-and-rebuild with a TabuList against rebuilding the same
+    // optimum.  A cycle runs in slices of at most annealSliceMs, so checkpoints,
+    // migration and the shared target are still served during it.
+    private static final String acceptMode = System.getProperty("barvanje.accept", "best");
+    private static final long annealSliceMs = Long.getLong("barvanje.annealSliceMs", 10_000L);
+
+    // Island model: every migrateMs each thread publishes its best to an
+    // ElitePool and, if it lags behind its donor, adopts or recombines the
+    // donor's grid (-Dbarvanje.migrateMs=0 turns it off).  -Dbarvanje.topology
+    // is "ring" (donor = next thread) or "all" (donor = best thread).
+    private static final long migrateMs = Long.getLong("barvanje.migrateMs", 600_000L);
+    private static final String topology = System.getProperty("barvanje.topology", "ring");
+
+    // Spatial decomposition (-Dbarvanje.tiles=true): the threads get the first
+    // quarter of each case, then TileSearch improves their best grid tile by
+    // tile in parallel, in rounds of barvanje.tileRoundMs.
+    private static final boolean tileMode = Boolean.getBoolean("barvanje.tiles");
+    private static final long tileRoundMs = Long.getLong("barvanje.tileRoundMs", 30_000L);
+
+    // Workers shared by all threads for the batched greedy fill (see BatchFill);
+    // 0 = one placement at a time.  Pays off when there are more cores than
+    // solver threads.
+    private static final int fillThreads = Integer.getInteger("barvanje.fillThreads", 0);
+    private static final ForkJoinPool fillPool = fillThreads > 0 ? new ForkJoinPool(fillThreads) : null;
+
+    // Cross-case scheduling (-Dbarvanje.schedule=true): all cases at once within
+    // the week, each worker taking slices of barvanje.sliceMs on whichever case
+    // currently gains fastest (see schedule()).
+    private static final boolean scheduleMode = Boolean.getBoolean("barvanje.schedule");
+    private static final long sliceMs = Long.getLong("barvanje.sliceMs", 300_000L);
+
+    // Successive-halving portfolio (-Dbarvanje.portfolio=true): short rounds for
+    // all seeds, the weaker half restarting from the survivors (see portfolio()).
+    private static final boolean portfolioMode = Boolean.getBoolean("barvanje.portfolio");
+
+    // Every checkpointMs each thread queues its best grid, score, RNG seed and
+    // the case's elapsed budget to barvanje.checkpointDir (see Checkpoints);
+    // 0 turns it off.  Run with --resume to continue from them after a kill.
+    // A run without --resume clears the directory first.  The schedule and
+    // portfolio modes write no checkpoints and cannot resume.
+    private static final long checkpointMs = Long.getLong("barvanje.checkpointMs", 600_000L);
+    private static final Path checkpointDir = Paths.get(System.getProperty("barvanje.checkpointDir", "checkpoints"));
+
+    // Fixed work per swap and chain pass instead of a time slice
+    // (-Dbarvanje.sliceWork=N: N blacks examined, N/16 chain moves tried; 0 =
+    // time slices).  With it a patience restart also comes after a fixed
+    // number of iterations without a gain (barvanje.restartIters) instead of
+    // a time, so a run's path depends on the seed alone and a one-thread run
+    // without checkpoints repeats exactly.
+    private static final long sliceWork = Long.getLong("barvanje.sliceWork", 0L);
+    private static final int restartIters = Integer.getInteger("barvanje.restartIters", 500);
+
+    // Earlier solutions to continue from (-Dbarvanje.warmStart=file,...); see
+    // WarmStart.  Threads without a checkpoint of their own start from it.
+    private static final WarmStart warmStart = new WarmStart(System.getProperty("barvanje.warmStart", ""));
+
+    // Finished cases, and the current best at each checkpoint, go to the
+    // output through a background writer (see SolutionWriter).
+    private static final SolutionWriter solutions = new SolutionWriter("Barvanje_solution2.txt", "Barvanje");
+
     public static void main(String[] args) throws Exception {
-        List<GridCase> allGrids = getGrids("Barvanje.txt");
-        // Cases 6–12 (0-based indices 5–11)
-        List<GridCase> grids = new ArrayList<>(allGrids.subList(5, allGrids.size()));
-        int count = grids.size(); // 7
+        if (!Arrays.asList("best", "anneal", "threshold", "tabu").contains(acceptMode))
+            throw new IllegalArgumentException("unknown -Dbarvanje.accept=" + acceptMode
+                + " (best, anneal, threshold or tabu)");
+        if (!Arrays.asList("ring", "all").contains(topology))
+            throw new IllegalArgumentException("unknown -Dbarvanje.topology=" + topology + " (ring or all)");
+        boolean resume = Arrays.asList(args).contains("--resume");
+        // A checkpoint holds one grid and RNG seed per thread of a plain run.
+        // The scheduler writes none, and a portfolio round's seeds come from
+        // the round, not the thread, so neither can continue from them.
+        if (resume && (scheduleMode || portfolioMode))
+            throw new IllegalArgumentException("--resume does not work with -Dbarvanje."
+                + (scheduleMode ? "schedule" : "portfolio") + "; resume without it");
+        if (resume && checkpointMs <= 0)
+            throw new IllegalArgumentException("--resume needs checkpoints (-Dbarvanje.checkpointMs > 0)");
+        boolean checkpoints = checkpointMs > 0 && !scheduleMode && !portfolioMode;
+        if (checkpoints && !resume) Checkpoints.clear(checkpointDir);
+        SolverMetrics.register();
+        PuzzleFile puzzle = PuzzleFile.open("Barvanje.txt");
+        System.out.println(puzzle.title);
+        // Cases 6–12 (0-based indices 5–11), each parsed when its turn comes
+        int count = puzzle.size() - 5; // 7
 
         // Linear time ramp: case 6 = 1 unit, case 7 = 2 units, ..., case 12 = 7 units.
         // Total = 28 units = 1 week wall time (cases run sequentially).
@@ -53,36 +142,115 @@ public class BarvanjeParallel {
         // All available threads work on ONE case at a time, each with a different seed.
         int numThreads = Runtime.getRuntime().availableProcessors();
         ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        ForkJoinPool tilePool = tileMode ? new ForkJoinPool(numThreads) : null;
 
         System.out.println("Using " + numThreads + " threads per case.");
+        System.out.println("Seed " + Seeds.BASE + " (repeat with -Dbarvanje.seed=" + Seeds.BASE + ")");
         for (int i = 0; i < count; i++)
             System.out.printf("  Case %d: cap = %.1fh%n", i + 6, limits[i] / 3_600_000.0);
         System.out.println();
 
+        if (scheduleMode) {
+            List<GridCase> grids = new ArrayList<>();
+            for (int k = 0; k < count; k++) grids.add(puzzle.read(k + 5));
+            schedule(grids, weekMs, numThreads, pool);
+            pool.shutdown();
+            solutions.flush();
+            System.out.println("All cases done.");
+            return;
+        }
 
         for (int k = 0; k < count; k++) {
-            GridCase gc = grids.get(k);
+            GridCase gc = puzzle.read(k + 5);
             long caseLimit = limits[k];
             long patienceMs = caseLimit / 3; // 1/3 of the case budget
             int caseNum = k + 6;
+            // Thread t's seed is derive(caseSeed, t); see Seeds.
+            long caseSeed = Seeds.derive(Seeds.BASE, caseNum);
+
+            // ── Resume: finished cases are kept, running ones continue ────────
+            // Each thread picks up its own checkpoint (grid and RNG seed); a
+            // thread without one starts from the best of them with a fresh seed.
+            byte[][] starts = new byte[numThreads][];
+            long[] seeds = new long[numThreads];
+            long elapsedBefore = 0;
+            if (resume) {
+                byte[] orig = gc.cells;
+                Checkpoints saved = new Checkpoints(checkpointDir, caseNum, gc.n, 0);
+                Checkpoints.Entry done = saved.load(-1);
+                if (done != null && SolverState.solves(done.grid, orig, gc.n, gc.d, gc.b, gc.c)) {
+                    System.arraycopy(done.grid, 0, gc.cells, 0, gc.n * gc.n);
+                    solutions.offer(gc, done.score, gc.cells);
+                    System.out.println("Case " + caseNum + " resumed as done: " + done.score);
+                    continue;
+                }
+                Checkpoints.Entry top = null;
+                for (int t = 0; t < numThreads; t++) {
+                    Checkpoints.Entry e = saved.load(t);
+                    if (e == null || !SolverState.solves(e.grid, orig, gc.n, gc.d, gc.b, gc.c)) continue;
+                    starts[t] = e.grid;
+                    seeds[t] = e.seed;
+                    elapsedBefore = Math.max(elapsedBefore, e.elapsedMs);
+                    if (top == null || e.score > top.score) top = e;
+                }
+                for (int t = 0; t < numThreads && top != null; t++)
+                    if (starts[t] == null) {
+                        starts[t] = top.grid;
+                        seeds[t] = Seeds.derive(caseSeed, numThreads + t);
+                    }
+                if (top != null) {
+                    caseLimit = Math.max(0, caseLimit - elapsedBefore);
+                    System.out.printf("Case %d resumed at %d after %.2fh%n",
+                        caseNum, top.score, elapsedBefore / 3_600_000.0);
+                }
+            }
+            byte[] incumbent = warmStart.start(caseNum, gc.n, gc.d, gc.b, gc.c, gc.cells);
+            for (int t = 0; t < numThreads; t++)
+                if (starts[t] == null) starts[t] = incumbent;
+            Checkpoints ckpt = checkpoints ? new Checkpoints(checkpointDir, caseNum, gc.n, elapsedBefore) : null;
+
             System.out.printf("Starting case %d (cap=%.1fh, patience=%.1fh)...%n",
                 caseNum, caseLimit / 3_600_000.0, patienceMs / 3_600_000.0);
 
             long caseStart = System.currentTimeMillis();
 
-            // Launch one solver per thread, each with a unique seed
-            List<Future<AlgorithmResult>> futures = new ArrayList<>();
-            for (int t = 0; t < numThreads; t++) {
-                final long seed = System.nanoTime() + t * 7919L;
-                final int threadId = t;
-                futures.add(pool.submit(() -> algorithm(gc, caseLimit, patienceMs, seed, threadId)));
-            }
-
-            // Collect and pick the best result across all threads
+            // Best score across this case's threads; all of them stop once it
+            // reaches -Dbarvanje.target.<case>, if set.
+            SharedBest shared = new SharedBest(Long.getLong("barvanje.target." + caseNum, Long.MAX_VALUE), null);
+            ElitePool elites = migrateMs > 0 ? new ElitePool(numThreads, topology) : null;
+            long threadLimit = tileMode ? caseLimit / 4 : caseLimit;
+            long threadPatience = Math.min(patienceMs, threadLimit);
             AlgorithmResult best = null;
-            for (int t = 0; t < numThreads; t++) {
-                AlgorithmResult r = futures.get(t).get();
-                if (best == null || r.score > best.score) best = r;
+            if (portfolioMode) {
+                best = portfolio(gc, threadLimit, threadPatience, numThreads, pool, elites, shared, starts,
+                                 Seeds.derive(caseSeed, -1));
+            } else {
+                // Launch one solver per thread, each with a unique seed, sharing one
+                // elite pool per case.  A resumed thread keeps its checkpoint's seed.
+                List<Future<AlgorithmResult>> futures = new ArrayList<>();
+                for (int t = 0; t < numThreads; t++) {
+                    final long seed = seeds[t] != 0 ? seeds[t] : Seeds.derive(caseSeed, t);
+                    final int threadId = t;
+                    final byte[] start = starts[t];
+                    futures.add(pool.submit(() -> algorithm(gc, threadLimit, threadPatience, seed, threadId,
+                                                            elites, start, shared, ckpt)));
+                }
+
+                // Collect and pick the best result across all threads
+                for (int t = 0; t < numThreads; t++) {
+                    AlgorithmResult r = futures.get(t).get();
+                    if (best == null || r.score > best.score) best = r;
+                }
+            }
+            if (shared.reached()) System.out.println("  target " + shared.target + " reached");
+
+            // Tile phase: all threads on the one best grid, region by region.
+            if (tileMode && !shared.reached()) {
+                byte[] cur = best.bestGrid.clone();
+                TileSearch tiles = new TileSearch(gc.n, gc.d, gc.b, gc.c, gc.cells, tilePool);
+                long gain = tiles.run(cur, caseStart + caseLimit, tileRoundMs, patienceMs, new Random(Seeds.derive(caseSeed, -2)));
+                best = new AlgorithmResult(best.score + gain, cur);
+                System.out.println("  tiles: +" + gain + " → " + best.score);
             }
 
             long usedMs = System.currentTimeMillis() - caseStart;
@@ -90,594 +258,472 @@ public class BarvanjeParallel {
                 caseNum, best.score, usedMs / 3_600_000.0, caseLimit / 3_600_000.0);
             System.out.flush();
 
-            // Write best grid back into the GridCase for solution output
-            for (int r = 0; r < gc.n; r++) {
-                List<Character> row = gc.grid.get(r);
-                for (int j = 0; j < gc.n; j++)
-                    row.set(j, best.bestGrid[r][j]);
-            }
+            // Independent re-check of the chosen grid against the input (see
+            // Validator), then write it back into the GridCase for output.
+            Validator.Report report = Validator.check(gc, best.bestGrid);
+            if (!report.valid() || report.score != best.score)
+                System.out.println("  ! case " + caseNum + " failed validation"
+                    + (report.listed.isEmpty() ? "" : ": " + report.listed.get(0)));
+            System.arraycopy(best.bestGrid, 0, gc.cells, 0, gc.n * gc.n);
 
             // Write partial results after each case so a kill doesn't lose everything
-            writeSolutions(grids.subList(0, k + 1), "Barvanje_solution2.txt", 6);
-            System.out.println("  → Barvanje_solution2.txt updated");
+            solutions.offer(gc, best.score, gc.cells);
+            System.out.println("  → Barvanje_solution2.txt queued");
+            if (ckpt != null) ckpt.saveDone(best.score, gc.cells);
             System.out.flush();
         }
 
         pool.shutdown();
+        if (tilePool != null) tilePool.shutdown();
+        Checkpoints.flush();
+        solutions.flush();
         System.out.println("All cases done.");
     }
 
-    private static List<GridCase> getGrids(String path) {
-        List<GridCase> grids = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-            System.out.println(br.readLine());
-            int gridCount = Integer.parseInt(br.readLine());
+    // ── Successive-halving portfolio ──────────────────────────────────────────
 
-            String line;
-            for (int g = 0; g < gridCount; g++) {
-                while ((line = br.readLine()) != null && line.trim().isEmpty()) {
-                }
-                line = br.readLine();
-                if (line == null)
-                    break;
-
-                String[] parts = line.trim().split("\\s+");
-                int n = Integer.parseInt(parts[0]);
-                int d = Integer.parseInt(parts[1]);
-                int b = Integer.parseInt(parts[2]);
-                int c = Integer.parseInt(parts[3]);
-
-                List<List<Character>> grid = new ArrayList<>();
-                for (int r = 0; r < n; r++) {
-                    String rowLine = br.readLine();
-                    List<Character> row = new ArrayList<>(rowLine.length());
-                    for (char ch : rowLine.toCharArray()) {
-                        row.add(ch);
+    /**
+     * Runs one case as rounds of successive halving.  Round r lasts twice as
+     * long as round r−1, and the rounds add up to limit.  After each round the
+     * threads are ranked by score.  The top numThreads / 2^(r+1) continue from
+     * their own best grid.  Every other thread restarts from a perturbed copy
+     * of a survivor, i.e. the survivor's grid with a random block of its added
+     * blacks cleared.  Stops early once shared reaches its target.  starts
+     * holds each thread's first start grid (null: the input).  The round
+     * seeds and perturbations come from portfolioSeed.  No checkpoints: a
+     * round's seeds do not belong to a thread, so they could not be resumed.
+     */
+    private static AlgorithmResult portfolio(GridCase gc, long limit, long patienceMs, int numThreads,
+                                             ExecutorService pool, ElitePool elites, SharedBest shared,
+                                             byte[][] starts, long portfolioSeed) throws Exception {
+        int n = gc.n;
+        byte[] orig = gc.cells;
+        int rounds = Math.max(1, 32 - Integer.numberOfLeadingZeros(numThreads - 1)); // ⌈log₂ threads⌉
+        long unit = limit / ((1L << rounds) - 1);
+        AlgorithmResult[] results = new AlgorithmResult[numThreads];
+        AlgorithmResult best = null;
+        Random rand = new Random(portfolioSeed);
+
+        for (int round = 0; round < rounds && !shared.reached(); round++) {
+            long budget = unit << round;
+            long roundPatience = Math.min(patienceMs, budget);
+            List<Future<AlgorithmResult>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                final long seed = rand.nextLong();
+                final int threadId = t;
+                final byte[] start = starts[t];
+                futures.add(pool.submit(() -> algorithm(gc, budget, roundPatience, seed, threadId,
+                                                        elites, start, shared, null)));
+            }
+            for (int t = 0; t < numThreads; t++) {
+                results[t] = futures.get(t).get();
+                if (best == null || results[t].score > best.score) best = results[t];
+            }
+
+            Integer[] rank = new Integer[numThreads];
+            for (int t = 0; t < numThreads; t++) rank[t] = t;
+            java.util.Arrays.sort(rank, (x, y) -> Long.compare(results[y].score, results[x].score));
+            int keep = Math.max(1, numThreads >> (round + 1));
+            for (int x = 0; x < numThreads; x++) {
+                byte[] g = results[rank[x % keep]].bestGrid.clone();
+                if (x >= keep) perturb(g, orig, n, rand);
+                starts[rank[x]] = g;
+            }
+            System.out.printf("  round %d (%.1f min): best %d, keeping %d%n",
+                round + 1, budget / 60_000.0, best.score, keep);
+            System.out.flush();
+        }
+        return best;
+    }
+
+    /** Clears the added blacks in a random block of side n/8..n/4 (stays valid). */
+    private static void perturb(byte[] grid, byte[] orig, int n, Random rand) {
+        int side = Math.max(1, n / 8 + rand.nextInt(n / 8 + 1));
+        int i0 = rand.nextInt(n - side + 1), j0 = rand.nextInt(n - side + 1);
+        for (int i = i0; i < i0 + side; i++)
+            for (int j = j0; j < j0 + side; j++)
+                if (grid[i * n + j] == SolverState.BLACK && orig[i * n + j] != SolverState.BLACK)
+                    grid[i * n + j] = SolverState.WHITE;
+    }
+
+    // ── Cross-case scheduler ──────────────────────────────────────────────────
+
+    /** One case under the scheduler.  All fields are guarded by the slot list. */
+    private static final class CaseSlot {
+        final GridCase gc;
+        final int caseNum;
+        long bestScore = -1;
+        byte[] bestGrid;  // cell states: the warm start, else null until the first slice
+        // Relative gain (Δscore / score) per CPU-second, exponentially decayed.
+        // The first slice starts from the input, so its gain says nothing about
+        // the margin: the rate is known from the second slice on.
+        double rate;
+        int slices;
+        int active;       // workers on this case right now
+
+        CaseSlot(GridCase gc, int caseNum) {
+            this.gc = gc;
+            this.caseNum = caseNum;
+        }
+
+        /** Cases without a known rate first, then rate shared among the workers on it. */
+        double priority() {
+            return (slices < 2 ? Double.MAX_VALUE : rate) / (1 + active);
+        }
+    }
+
+    /**
+     * Runs all cases at once until budgetMs of wall time has passed.  Each
+     * worker repeatedly takes the case with the highest rate / (1 + workers
+     * already on it), runs one slice of algorithm() from that case's best grid,
+     * and folds the result back in.  Gains are relative to the case's score,
+     * since pair counts differ by three orders of magnitude between cases, and
+     * the rate follows the recent slices, so cores leave a case that
+     * plateaus.  One slice in ten explores a random case instead.
+     */
+    private static void schedule(List<GridCase> grids, long budgetMs, int numThreads, ExecutorService pool)
+            throws Exception {
+        List<CaseSlot> slots = new ArrayList<>();
+        for (int k = 0; k < grids.size(); k++) {
+            CaseSlot slot = new CaseSlot(grids.get(k), k + 6);
+            GridCase gc = slot.gc;
+            slot.bestGrid = warmStart.start(slot.caseNum, gc.n, gc.d, gc.b, gc.c, gc.cells);
+            if (slot.bestGrid != null) slot.bestScore = Validator.check(gc, slot.bestGrid).score;
+            slots.add(slot);
+        }
+        long deadline = System.currentTimeMillis() + budgetMs;
+
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final int threadId = t;
+            workers.add(pool.submit(() -> {
+                Random rand = new Random(Seeds.derive(Seeds.derive(Seeds.BASE, 0), threadId));
+                while (true) {
+                    long slice = Math.min(sliceMs, deadline - System.currentTimeMillis());
+                    if (slice < 1000) return null;
+                    CaseSlot slot = null;
+                    byte[] start;
+                    long before;
+                    synchronized (slots) {
+                        // One slice in ten goes to a random case, so a case whose
+                        // rate was measured on a bad slice gets measured again.
+                        if (rand.nextInt(10) == 0) slot = slots.get(rand.nextInt(slots.size()));
+                        else for (CaseSlot s : slots)
+                            if (slot == null || s.priority() > slot.priority()) slot = s;
+                        slot.active++;
+                        start = slot.bestGrid;
+                        before = slot.bestScore;
+                    }
+                    AlgorithmResult r = algorithm(slot.gc, slice, slice, rand.nextLong(), threadId, null, start, null, null);
+                    synchronized (slots) {
+                        slot.active--;
+                        if (r.score > slot.bestScore) {
+                            slot.bestScore = r.score;
+                            slot.bestGrid = r.bestGrid;
+                            solutions.offer(slot.gc, r.score, r.bestGrid);
+                        }
+                        if (before >= 0) {
+                            double perSec = Math.max(0, r.score - before) / (double) Math.max(1, before) / (slice / 1000.0);
+                            slot.rate = slot.slices < 2 ? perSec : 0.5 * slot.rate + 0.5 * perSec;
+                        }
+                        slot.slices++;
+                        System.out.printf("  [t%d] case %d: %d  (rate %.2e/s)%n", threadId, slot.caseNum, slot.bestScore, slot.rate);
+                        System.out.flush();
                     }
-                    grid.add(row);
                 }
-                grids.add(new GridCase(n, d, b, c, grid));
+            }));
+        }
+        for (Future<?> w : workers) w.get();
+
+        for (CaseSlot slot : slots) {
+            GridCase gc = slot.gc;
+            if (slot.bestGrid == null) continue;
+            Validator.Report report = Validator.check(gc, slot.bestGrid);
+            if (!report.valid() || report.score != slot.bestScore)
+                System.out.println("  ! case " + slot.caseNum + " failed validation"
+                    + (report.listed.isEmpty() ? "" : ": " + report.listed.get(0)));
+            System.arraycopy(slot.bestGrid, 0, gc.cells, 0, gc.n * gc.n);
+            System.out.println("Case " + slot.caseNum + " done: " + slot.bestScore);
+        }
+    }
+
+    // ── Traced runs ───────────────────────────────────────────────────────────
+
+    /**
+     * One run of a case for TimeToTarget: numThreads threads for limitMs,
+     * seeded as main() seeds them with -Dbarvanje.seed=seed, from the input
+     * grid, without checkpoints or output.  The other -Dbarvanje switches
+     * apply as usual.  Returns the case's best score over time.
+     */
+    static ScoreCurve trace(GridCase gc, int numThreads, long limitMs, long seed) throws Exception {
+        long caseSeed = Seeds.derive(seed, gc.caseNum);
+        ScoreCurve curve = new ScoreCurve();
+        SharedBest shared = new SharedBest(Long.MAX_VALUE, curve);
+        ElitePool elites = migrateMs > 0 ? new ElitePool(numThreads, topology) : null;
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<AlgorithmResult>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                final long threadSeed = Seeds.derive(caseSeed, t);
+                final int threadId = t;
+                futures.add(pool.submit(() -> algorithm(gc, limitMs, limitMs / 3, threadSeed, threadId,
+                                                        elites, null, shared, null)));
             }
-        } catch (IOException | NumberFormatException e) {
-            e.printStackTrace();
+            for (Future<AlgorithmResult> f : futures) shared.offer(f.get().score);
+        } finally {
+            pool.shutdown();
         }
-        return grids;
+        return curve;
     }
 
     /**
      * Ruin-and-rebuild heuristic — identical to Barvanje.algorithm() but takes
      * an explicit seed and returns an AlgorithmResult instead of modifying gridCase.
      * This makes it safe to call from multiple threads on the same GridCase.
+     * A non-null start grid (cell states) is the starting point instead of the
+     * input grid.  A non-null shared best collects the case's best score across
+     * threads, and every thread stops once it reaches the target.  A non-null
+     * ckpt gets this thread's best every checkpointMs.
      */
-    private static AlgorithmResult algorithm(GridCase gridCase, long timeLimit, long patienceMs, long seed, int threadId) {
+    private static AlgorithmResult algorithm(GridCase gridCase, long timeLimit, long patienceMs, long seed, int threadId,
+                                             ElitePool elites, byte[] start, SharedBest shared, Checkpoints ckpt) {
         int n = gridCase.n;
         int d = gridCase.d;
-        int b = gridCase.b;
-        int c = gridCase.c;
-
-        char[][] bestGrid = new char[n][n];
-        char[][] grid = new char[n][n];
-        // Read-only access to gridCase.grid — safe for concurrent threads
-        char[][] origGrid = new char[n][n];
-        for (int i = 0; i < n; i++)
-            for (int j = 0; j < n; j++) {
-                char ch = gridCase.grid.get(i).get(j);
-                grid[i][j] = ch;
-                bestGrid[i][j] = ch;
-                origGrid[i][j] = ch;
-            }
 
-        int[][] neighBlacks = new int[n][n];
-        int[][] neighWhites = new int[n][n];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                int r0 = Math.max(0, i-d), r1 = Math.min(n-1, i+d);
-                int c0 = Math.max(0, j-d), c1 = Math.min(n-1, j+d);
-                int bCnt = 0, wCnt = 0;
-                for (int k = r0; k <= r1; k++)
-                    for (int l = c0; l <= c1; l++) {
-                        if (k == i && l == j) continue;
-                        if (grid[k][l] == '#') bCnt++;
-                        else if (grid[k][l] == '.') wCnt++;
-                    }
-                neighBlacks[i][j] = bCnt;
-                neighWhites[i][j] = wCnt;
-            }
+        // Read-only access to gridCase.cells — safe for concurrent threads
+        byte[] origGrid = gridCase.cells.clone();
+
+        // Flat per-thread state; counts and constraint index are (re)built through
+        // sliding window sums in O(n²) (see WindowCounts).
+        SolverState st = new SolverState(n, d, gridCase.b, gridCase.c, origGrid, offHeapState);
+        // Continue from a valid grid (e.g. the scheduler's best so far or a
+        // warm start) instead of the input; the input still decides which cells
+        // are fixed.  Patience restarts go back to it too.
+        byte[] restartGrid = origGrid;
+        if (start != null) {
+            st.load(start);
+            st.save();
+            restartGrid = start;
         }
+        long initScore = st.score;
 
-        long initScore = 0;
-        for (int i = 0; i < n; i++)
-            for (int j = 0; j < n; j++)
-                if (grid[i][j] == '#')
-                    initScore += neighBlacks[i][j];
-        initScore /= 2;
-
+        // Patience restart r reseeds with derive(seed, r), so the whole run
+        // follows from seed.
         Random rand = new Random(seed);
+        int restarts = 0;
         long startTime = System.currentTimeMillis();
+        // timeLimit may be Long.MAX_VALUE (no limit): clamp instead of overflowing.
+        long endTime = timeLimit > Long.MAX_VALUE - startTime ? Long.MAX_VALUE : startTime + timeLimit;
         long bestScore = initScore;
-        long currentScore = initScore;
         int iters = 0;
 
         long effectivePatience = Math.max(2000L, Math.min(patienceMs / 3, (long) n * n / 4));
         long lastBestImprovement = startTime;
 
-        int maxBucket = (2*d+1)*(2*d+1);
-        boolean usePropReinsert = (long) n * n * maxBucket < 100_000_000L;
-
-        int[][] blockingCount = new int[n][n];
-        boolean[][] isBlocking = new boolean[n][n];
-
-        int initCap = Math.max(16, n * n / maxBucket * 4);
-        int[][] bkt = new int[maxBucket][initCap];
-        int[] bktSz = new int[maxBucket];
-
-        long resetCost = (long) maxBucket * n * n;
-        boolean useReset = resetCost < 200_000_000L;
+        // Only cells within 2d of a removal can become eligible between fills.
+        DirtyRegion dirty = new DirtyRegion(n, 2 * d);
+        SwapSearch swaps = new SwapSearch(st, dirty);
+        EjectionChains chains = new EjectionChains(st, dirty, swaps);
+        Annealing annealing = acceptMode.equals("anneal") || acceptMode.equals("threshold")
+                            ? new Annealing(st, acceptMode.equals("threshold")) : null;
+        TabuList tabu = acceptMode.equals("tabu") ? new TabuList(n * n, 4096) : null;
+        Ruin ruin = new Ruin(st, dirty, swaps, tabu);
+        // Phases 1 and 2 of every iteration (see GreedyFill); batched with
+        // -Dbarvanje.fillThreads=N.
+        GreedyFill fill = new GreedyFill(st, dirty, tabu, fillPool);
 
         boolean timeUp = false;
-        int placements = 0;
         long lastImprovementTime = startTime;
-
-        for (int i = 0; i < n; i++)
-            for (int j = 0; j < n; j++)
-                if (grid[i][j] == '#' && (neighBlacks[i][j] >= c || neighWhites[i][j] <= b)) {
-                    isBlocking[i][j] = true;
-                    int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                    int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                    for (int k = r0; k <= r1; k++)
-                        for (int l = c0; l <= c1; l++) {
-                            if (k==i && l==j) continue;
-                            blockingCount[k][l]++;
-                        }
+        int lastImprovementIter = 0;
+        long nextMigration = startTime + migrateMs;
+        long nextCheckpoint = startTime + checkpointMs;
+        // Counters for JMX and JFR (see SolverMetrics).
+        SolverMetrics.Probe probe = SolverMetrics.probe(gridCase.caseNum, threadId);
+
+        try {
+            // ── Main ruin-and-rebuild loop ────────────────────────────────────────────
+            while (!timeUp && System.currentTimeMillis() - startTime < timeLimit
+                           && System.currentTimeMillis() - lastBestImprovement < patienceMs
+                           && (shared == null || !shared.reached())) {
+                iters++;
+                if (shared != null) shared.offer(bestScore);
+                probe.iteration(bestScore);
+
+                // ── Checkpoint: reseed, so the recorded seed continues this run ───
+                // The current best also goes to the solution file.
+                if (ckpt != null && System.currentTimeMillis() >= nextCheckpoint) {
+                    nextCheckpoint = System.currentTimeMillis() + checkpointMs;
+                    long reseed = rand.nextLong();
+                    rand.setSeed(reseed);
+                    ckpt.save(threadId, bestScore, st.best, reseed);
+                    solutions.offer(gridCase, bestScore, st.best);
                 }
 
-        // Swap local search: O(n² × (4d+1)²) per sweep — skip for huge windows.
-        boolean useSwap = (long) n * n * (4*d+1) * (4*d+1) < 500_000_000L;
-
-        // ── Main ruin-and-rebuild loop ────────────────────────────────────────────
-        while (!timeUp && System.currentTimeMillis() - startTime < timeLimit
-                       && System.currentTimeMillis() - lastBestImprovement < patienceMs) {
-            iters++;
-
-            // ── Patience-based restart ────────────────────────────────────────
-            if (System.currentTimeMillis() - lastImprovementTime >= effectivePatience) {
-                rand = new Random(System.nanoTime());
-                currentScore = initScore;
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++)
-                        grid[i][j] = origGrid[i][j];
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++) {
-                        int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                        int c0x = Math.max(0,j-d), c1x = Math.min(n-1,j+d);
-                        int bCnt = 0, wCnt = 0;
-                        for (int k = r0; k <= r1; k++)
-                            for (int l = c0x; l <= c1x; l++) {
-                                if (k == i && l == j) continue;
-                                if (grid[k][l] == '#') bCnt++;
-                                else if (grid[k][l] == '.') wCnt++;
-                            }
-                        neighBlacks[i][j] = bCnt;
-                        neighWhites[i][j] = wCnt;
-                    }
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++) {
-                        blockingCount[i][j] = 0;
-                        isBlocking[i][j] = false;
-                    }
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++)
-                        if (grid[i][j] == '#' && (neighBlacks[i][j] >= c || neighWhites[i][j] <= b)) {
-                            isBlocking[i][j] = true;
-                            int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                            int c0x = Math.max(0,j-d), c1x = Math.min(n-1,j+d);
-                            for (int k = r0; k <= r1; k++)
-                                for (int l = c0x; l <= c1x; l++) {
-                                    if (k==i && l==j) continue;
-                                    blockingCount[k][l]++;
-                                }
-                        }
-                lastImprovementTime = System.currentTimeMillis();
-            }
-
-            // ── Phase 1: fill the bucket queue ───────────────────────────────────
-            for (int p = 0; p < maxBucket; p++) bktSz[p] = 0;
-            int topBucket = 0;
-            for (int i = 0; i < n; i++)
-                for (int j = 0; j < n; j++)
-                    if (grid[i][j] == '.') {
-                        int p = neighBlacks[i][j];
-                        if (bktSz[p] == bkt[p].length) bkt[p] = java.util.Arrays.copyOf(bkt[p], bkt[p].length * 2);
-                        bkt[p][bktSz[p]++] = i * n + j;
-                        if (p > topBucket) topBucket = p;
-                    }
-
-            // ── Phase 2: greedy fill ──────────────────────────────────────────────
-            while (true) {
-                while (topBucket >= 0 && bktSz[topBucket] == 0) topBucket--;
-                if (topBucket < 0) break;
-
-                int idx = rand.nextInt(bktSz[topBucket]);
-                int code = bkt[topBucket][idx];
-                bkt[topBucket][idx] = bkt[topBucket][--bktSz[topBucket]];
-                int pi = code / n, pj = code % n;
-
-                if (grid[pi][pj] != '.') continue;
-                if (neighWhites[pi][pj] < b || neighBlacks[pi][pj] > c || blockingCount[pi][pj] > 0) continue;
-                if (neighBlacks[pi][pj] != topBucket) {
-                    if (!usePropReinsert) {
-                        int p = neighBlacks[pi][pj];
-                        if (p < maxBucket) {
-                            if (bktSz[p] == bkt[p].length) bkt[p] = java.util.Arrays.copyOf(bkt[p], bkt[p].length * 2);
-                            bkt[p][bktSz[p]++] = code;
-                            if (p > topBucket) topBucket = p;
-                        }
-                    }
-                    continue;
+                // ── Patience-based restart ────────────────────────────────────────
+                // Not in the middle of a cooling cycle: a cycle spans patienceMs.
+                // With sliceWork it counts iterations, not time (see sliceWork).
+                boolean cooling = annealing != null && annealing.cooling();
+                boolean stuck = sliceWork > 0 ? iters - lastImprovementIter > restartIters
+                              : System.currentTimeMillis() - lastImprovementTime >= effectivePatience;
+                if (!cooling && stuck) {
+                    long t = System.nanoTime();
+                    rand = new Random(Seeds.derive(seed, ++restarts));
+                    st.load(restartGrid);
+                    dirty.all();
+                    swaps.lookAll();
+                    lastImprovementTime = System.currentTimeMillis();
+                    lastImprovementIter = iters;
+                    probe.add(SolverMetrics.RESTARTS, 1);
+                    probe.lap(SolverMetrics.RESET_NS, t);
                 }
 
-                // ── Place the cell ────────────────────────────────────────────────
-                currentScore += neighBlacks[pi][pj];
-                grid[pi][pj] = '#';
-
-                if ((++placements & 1023) == 0 && System.currentTimeMillis() - startTime >= timeLimit) {
-                    timeUp = true;
-                    break;
+                long phaseStart = System.nanoTime();
+                // While a cooling cycle runs, the iteration is just its next slice.
+                if (!cooling) {
+                    long fillStart = System.currentTimeMillis();
+                    long queued = fill.queued, placed = fill.placements, pops = fill.pops;
+
+                    // ── Phases 1–2: queue the dirty region, greedy fill ──────────────────
+                    if (!fill.run(rand, endTime, iters)) timeUp = true;
+                    probe.add(SolverMetrics.FILLS, 1);
+                    probe.add(SolverMetrics.QUEUED, fill.queued - queued);
+                    probe.add(SolverMetrics.PLACEMENTS, fill.placements - placed);
+                    probe.add(SolverMetrics.POPS, fill.pops - pops);
+                    phaseStart = probe.lap(SolverMetrics.FILL_NS, phaseStart);
+
+                    // ── Phase 1b: swap-based local search ─────────────────────────────────
+                    // Remove one added black cell, place the best white cell within 2d that
+                    // is eligible after the removal.  Don't-look bits keep this to blacks
+                    // near recent changes, so it runs on every case.  Each call gets at most
+                    // as long as the fill took (20 ms at least); leftover bits carry over.
+                    long now = System.currentTimeMillis();
+                    long slice = Math.max(20, now - fillStart);
+                    long swapAttempts = swaps.attempts, swapAccepts = swaps.accepts;
+                    if (sliceWork > 0) swaps.run(endTime, sliceWork);
+                    else swaps.run(Math.min(endTime, now + slice));
+                    probe.add(SolverMetrics.SWAP_ATTEMPTS, swaps.attempts - swapAttempts);
+                    probe.add(SolverMetrics.SWAP_ACCEPTS, swaps.accepts - swapAccepts);
+                    phaseStart = probe.lap(SolverMetrics.SWAP_NS, phaseStart);
+
+                    // ── Phase 1c (every 4th iter): ejection chains ────────────────────
+                    // Take out one or two blacks and put in one more than that, when the
+                    // score rises (see EjectionChains).  Same time slice as the swaps.
+                    if (iters % 4 == 3) {
+                        long chainAttempts = chains.attempts, chainAccepts = chains.accepts;
+                        if (sliceWork > 0) chains.run(endTime, rand, Math.max(1, sliceWork / 16));
+                        else chains.run(Math.min(endTime, System.currentTimeMillis() + slice), rand);
+                        probe.add(SolverMetrics.CHAIN_ATTEMPTS, chains.attempts - chainAttempts);
+                        probe.add(SolverMetrics.CHAIN_ACCEPTS, chains.accepts - chainAccepts);
+                        phaseStart = probe.lap(SolverMetrics.CHAIN_NS, phaseStart);
+                    }
                 }
-
-                int r0 = Math.max(0,pi-d), r1 = Math.min(n-1,pi+d);
-                int c0 = Math.max(0,pj-d), c1 = Math.min(n-1,pj+d);
-
-                // ── Self-blocking check ───────────────────────────────────────────
-                if (!isBlocking[pi][pj] && (neighBlacks[pi][pj] >= c || neighWhites[pi][pj] <= b)) {
-                    isBlocking[pi][pj] = true;
-                    for (int x = r0; x <= r1; x++)
-                        for (int y = c0; y <= c1; y++) {
-                            if (x==pi && y==pj) continue;
-                            blockingCount[x][y]++;
-                        }
+                if (System.currentTimeMillis() - startTime >= timeLimit) timeUp = true;
+
+                // ── Tabu mode: an optimum seen before lengthens the tabu tenure ───
+                if (tabu != null) tabu.visit(st.hash);
+
+                if (st.score > bestScore) {
+                    bestScore = st.score;
+                    lastImprovementTime = System.currentTimeMillis();
+                    lastBestImprovement = lastImprovementTime;
+                    lastImprovementIter = iters;
+                    long elapsed = (lastImprovementTime - startTime) / 1000;
+                    System.out.println("    [t" + threadId + "] best=" + bestScore + "  (" + elapsed + "s)");
+                    System.out.flush();
+                    st.save();
                 }
 
-                for (int k = r0; k <= r1; k++)
-                    for (int l = c0; l <= c1; l++) {
-                        if (k==pi && l==pj) continue;
-                        neighBlacks[k][l]++;
-                        neighWhites[k][l]--;
-
-                        if (usePropReinsert && grid[k][l] == '.') {
-                            int p = neighBlacks[k][l];
-                            if (p < maxBucket) {
-                                if (bktSz[p] == bkt[p].length) bkt[p] = java.util.Arrays.copyOf(bkt[p], bkt[p].length * 2);
-                                bkt[p][bktSz[p]++] = k * n + l;
-                                if (p > topBucket) topBucket = p;
-                            }
-                        }
-
-                        if (grid[k][l] == '#' && !isBlocking[k][l]) {
-                            if (neighBlacks[k][l] >= c || neighWhites[k][l] <= b) {
-                                isBlocking[k][l] = true;
-                                int r2 = Math.max(0,k-d), r3 = Math.min(n-1,k+d);
-                                int c2 = Math.max(0,l-d), c3 = Math.min(n-1,l+d);
-                                for (int x = r2; x <= r3; x++)
-                                    for (int y = c2; y <= c3; y++) {
-                                        if (x==k && y==l) continue;
-                                        blockingCount[x][y]++;
-                                    }
-                            }
-                        }
+                // ── Phase 3a (-Dbarvanje.accept=anneal|threshold): cooling cycle ──
+                // Replaces ruin-and-rebuild with single-cell moves under a time-based
+                // schedule (see Annealing).  One cycle spans the patience window, so
+                // it reheats as long as cycles keep finding a new best.  Each
+                // iteration runs one slice of it, up to the next checkpoint or
+                // migration at most, and it stops early once the target is reached.
+                if (annealing != null) {
+                    long now = System.currentTimeMillis();
+                    if (!cooling) annealing.start(patienceMs > endTime - now ? endTime : now + patienceMs);
+                    long until = Math.min(endTime, now + annealSliceMs);
+                    if (ckpt != null) until = Math.min(until, nextCheckpoint);
+                    if (elites != null) until = Math.min(until, nextMigration);
+                    long annealed = annealing.run(until, bestScore, rand, shared == null ? null : shared::reached);
+                    probe.lap(SolverMetrics.ANNEAL_NS, phaseStart);
+                    if (annealed > bestScore) {
+                        bestScore = annealed;
+                        lastImprovementTime = System.currentTimeMillis();
+                        lastBestImprovement = lastImprovementTime;
+                        lastImprovementIter = iters;
                     }
-            }
-            // ── End greedy fill ───────────────────────────────────────────────────
-
-            // ── Phase 1b: swap-based local search ─────────────────────────────────
-            boolean improved = useSwap;
-            while (improved) {
-                improved = false;
-                for (int si = 0; si < n && !timeUp; si++) {
-                    // Time check every row to avoid getting stuck
-                    if (System.currentTimeMillis() - startTime >= timeLimit) { timeUp = true; break; }
-                    for (int sj = 0; sj < n && !timeUp; sj++) {
-                        if (grid[si][sj] != '#') continue;
-                        int removeLoss = neighBlacks[si][sj];
-
-                        grid[si][sj] = '.';
-                        int sr0 = Math.max(0,si-d), sr1 = Math.min(n-1,si+d);
-                        int sc0 = Math.max(0,sj-d), sc1 = Math.min(n-1,sj+d);
-                        for (int k = sr0; k <= sr1; k++)
-                            for (int l = sc0; l <= sc1; l++) {
-                                if (k==si && l==sj) continue;
-                                neighBlacks[k][l]--;
-                                neighWhites[k][l]++;
-                            }
-
-                        int bestGain = removeLoss;
-                        int bestPi = -1, bestPj = -1;
-                        int er0 = Math.max(0,si-2*d), er1 = Math.min(n-1,si+2*d);
-                        int ec0 = Math.max(0,sj-2*d), ec1 = Math.min(n-1,sj+2*d);
-                        for (int wi = er0; wi <= er1; wi++)
-                            for (int wj = ec0; wj <= ec1; wj++) {
-                                if (grid[wi][wj] != '.') continue;
-                                int wBlacks = neighBlacks[wi][wj];
-                                int wWhites = neighWhites[wi][wj];
-                                if (wWhites < b || wBlacks > c) continue;
-                                boolean blocked = false;
-                                int wr0 = Math.max(0,wi-d), wr1 = Math.min(n-1,wi+d);
-                                int wc0 = Math.max(0,wj-d), wc1 = Math.min(n-1,wj+d);
-                                for (int k = wr0; k <= wr1 && !blocked; k++)
-                                    for (int l = wc0; l <= wc1 && !blocked; l++) {
-                                        if (k==wi && l==wj) continue;
-                                        if (grid[k][l] == '#') {
-                                            if (neighBlacks[k][l] >= c) blocked = true;
-                                            if (neighWhites[k][l] <= b) blocked = true;
-                                        }
-                                    }
-                                if (blocked) continue;
-                                if (wBlacks > bestGain) {
-                                    bestGain = wBlacks;
-                                    bestPi = wi;
-                                    bestPj = wj;
-                                }
-                            }
-
-                        if (bestPi >= 0) {
-                            currentScore -= removeLoss;
-                            currentScore += bestGain;
-                            if (isBlocking[si][sj]) {
-                                isBlocking[si][sj] = false;
-                                for (int k = sr0; k <= sr1; k++)
-                                    for (int l = sc0; l <= sc1; l++) {
-                                        if (k==si && l==sj) continue;
-                                        blockingCount[k][l]--;
-                                    }
-                            }
-                            for (int k = sr0; k <= sr1; k++)
-                                for (int l = sc0; l <= sc1; l++) {
-                                    if (k==si && l==sj) continue;
-                                    if (grid[k][l] == '#' && isBlocking[k][l]
-                                            && neighBlacks[k][l] < c && neighWhites[k][l] > b) {
-                                        isBlocking[k][l] = false;
-                                        int r2 = Math.max(0,k-d), r3 = Math.min(n-1,k+d);
-                                        int c2 = Math.max(0,l-d), c3 = Math.min(n-1,l+d);
-                                        for (int x = r2; x <= r3; x++)
-                                            for (int y = c2; y <= c3; y++) {
-                                                if (x==k && y==l) continue;
-                                                blockingCount[x][y]--;
-                                            }
-                                    }
-                                }
-                            grid[bestPi][bestPj] = '#';
-                            int pr0 = Math.max(0,bestPi-d), pr1 = Math.min(n-1,bestPi+d);
-                            int pc0 = Math.max(0,bestPj-d), pc1 = Math.min(n-1,bestPj+d);
-                            if (neighBlacks[bestPi][bestPj] >= c || neighWhites[bestPi][bestPj] <= b) {
-                                isBlocking[bestPi][bestPj] = true;
-                                for (int x = pr0; x <= pr1; x++)
-                                    for (int y = pc0; y <= pc1; y++) {
-                                        if (x==bestPi && y==bestPj) continue;
-                                        blockingCount[x][y]++;
-                                    }
-                            }
-                            for (int k = pr0; k <= pr1; k++)
-                                for (int l = pc0; l <= pc1; l++) {
-                                    if (k==bestPi && l==bestPj) continue;
-                                    neighBlacks[k][l]++;
-                                    neighWhites[k][l]--;
-                                    if (grid[k][l] == '#' && !isBlocking[k][l]) {
-                                        if (neighBlacks[k][l] >= c || neighWhites[k][l] <= b) {
-                                            isBlocking[k][l] = true;
-                                            int r2 = Math.max(0,k-d), r3 = Math.min(n-1,k+d);
-                                            int c2 = Math.max(0,l-d), c3 = Math.min(n-1,l+d);
-                                            for (int x = r2; x <= r3; x++)
-                                                for (int y = c2; y <= c3; y++) {
-                                                    if (x==k && y==l) continue;
-                                                    blockingCount[x][y]++;
-                                                }
-                                        }
-                                    }
-                                }
-                            improved = true;
-                        } else {
-                            grid[si][sj] = '#';
-                            for (int k = sr0; k <= sr1; k++)
-                                for (int l = sc0; l <= sc1; l++) {
-                                    if (k==si && l==sj) continue;
-                                    neighBlacks[k][l]++;
-                                    neighWhites[k][l]--;
-                                }
-                        }
-
-                        if ((++placements & 1023) == 0 && System.currentTimeMillis() - startTime >= timeLimit) {
-                            timeUp = true;
-                        }
+                    if (!annealing.cooling()) {
+                        dirty.all();
+                        swaps.lookAll();
                     }
-                } // end row loop
-            }
-
-            if (currentScore > bestScore) {
-                bestScore = currentScore;
-                lastImprovementTime = System.currentTimeMillis();
-                lastBestImprovement = lastImprovementTime;
-                long elapsed = (lastImprovementTime - startTime) / 1000;
-                System.out.println("    [t" + threadId + "] best=" + bestScore + "  (" + elapsed + "s)");
-                System.out.flush();
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++)
-                        bestGrid[i][j] = grid[i][j];
-            }
-
-            // ── Phase 3 (every 20 iters): hard reset to best ─────────────────────
-            if (useReset && iters % 20 == 0) {
-                currentScore = bestScore;
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++) {
-                        char prev = grid[i][j];
-                        char next = bestGrid[i][j];
-                        if (prev == next) continue;
-                        if (prev == '#' && isBlocking[i][j]) {
-                            isBlocking[i][j] = false;
-                            int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                            int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                            for (int k = r0; k <= r1; k++)
-                                for (int l = c0; l <= c1; l++) {
-                                    if (k==i && l==j) continue;
-                                    blockingCount[k][l]--;
-                                }
-                        }
-                        grid[i][j] = next;
-                        int diff = (next == '#') ? 1 : -1;
-                        int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                        int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                        for (int k = r0; k <= r1; k++)
-                            for (int l = c0; l <= c1; l++) {
-                                if (k==i && l==j) continue;
-                                neighBlacks[k][l] += diff;
-                                neighWhites[k][l] -= diff;
-                            }
-                    }
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++) {
-                        blockingCount[i][j] = 0;
-                        isBlocking[i][j] = false;
-                    }
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++)
-                        if (grid[i][j] == '#' && (neighBlacks[i][j] >= c || neighWhites[i][j] <= b)) {
-                            isBlocking[i][j] = true;
-                            int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                            int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                            for (int k = r0; k <= r1; k++)
-                                for (int l = c0; l <= c1; l++) {
-                                    if (k==i && l==j) continue;
-                                    blockingCount[k][l]++;
-                                }
-                        }
-                continue;
-            }
+                    if (System.currentTimeMillis() >= endTime) timeUp = true;
+                }
 
-            // ── Phase 4: ruin ─────────────────────────────────────────────────────
-            // Alternate between different ruin strategies for diversity:
-            //   0 = rectangle ruin (original)
-            //   1 = scatter ruin (random fraction of all blacks)
-            //   2 = row/column band ruin
-            int ruinType = iters % 3;
-
-            if (ruinType == 1) {
-                // Scatter ruin: remove a random 5-40% of placed black cells
-                double frac = 0.05 + rand.nextDouble() * 0.35;
-                for (int i = 0; i < n; i++)
-                    for (int j = 0; j < n; j++)
-                        if (grid[i][j] == '#' && origGrid[i][j] != '#' && rand.nextDouble() < frac) {
-                            currentScore -= neighBlacks[i][j];
-                            if (isBlocking[i][j]) {
-                                isBlocking[i][j] = false;
-                                int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                                int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                                for (int k = r0; k <= r1; k++)
-                                    for (int l = c0; l <= c1; l++) {
-                                        if (k==i && l==j) continue;
-                                        blockingCount[k][l]--;
-                                    }
-                            }
-                            grid[i][j] = '.';
-                            int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                            int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                            for (int k = r0; k <= r1; k++)
-                                for (int l = c0; l <= c1; l++) {
-                                    if (k==i && l==j) continue;
-                                    neighBlacks[k][l]--;
-                                    neighWhites[k][l]++;
-                                    if (grid[k][l] == '#' && isBlocking[k][l]
-                                            && neighBlacks[k][l] < c && neighWhites[k][l] > b) {
-                                        isBlocking[k][l] = false;
-                                        int r2 = Math.max(0,k-d), r3 = Math.min(n-1,k+d);
-                                        int c2 = Math.max(0,l-d), c3 = Math.min(n-1,l+d);
-                                        for (int x = r2; x <= r3; x++)
-                                            for (int y = c2; y <= c3; y++) {
-                                                if (x==k && y==l) continue;
-                                                blockingCount[x][y]--;
-                                            }
-                                    }
-                                }
+                // ── Island model: migration ───────────────────────────────────────
+                // Publish this thread's best; if the donor's is better, take it as
+                // the new best and continue from it, or half the time from a
+                // recombination of it with this thread's own best.
+                if (elites != null && System.currentTimeMillis() >= nextMigration) {
+                    nextMigration = System.currentTimeMillis() + migrateMs;
+                    elites.publish(threadId, bestScore, st.best);
+                    ElitePool.Elite donor = elites.donor(threadId);
+                    if (donor != null && donor.score > bestScore) {
+                        long t = System.nanoTime();
+                        byte[] own = rand.nextBoolean() ? st.best.clone() : null;
+                        st.load(donor.grid);
+                        st.save();
+                        bestScore = donor.score;
+                        if (own != null) {
+                            st.load(ElitePool.recombine(donor.grid, own, n, rand));
+                            st.repair();
                         }
-            } else {
-                // Rectangle ruin (type 0) or band ruin (type 2)
-                int minBlock = 1;
-                int maxBlock = Math.max(minBlock + 1, n / 2);
-                int blockH, blockW, startI, startJ;
-                if (ruinType == 2) {
-                    // Band: full-width or full-height strip
-                    if (rand.nextBoolean()) {
-                        blockH = 1 + rand.nextInt(Math.max(1, n / 4));
-                        blockW = n;
-                    } else {
-                        blockH = n;
-                        blockW = 1 + rand.nextInt(Math.max(1, n / 4));
+                        System.out.println("    [t" + threadId + "] " + (own != null ? "recombined with" : "adopted")
+                            + " t" + donor.threadId + " best=" + bestScore);
+                        System.out.flush();
+                        dirty.all();
+                        swaps.lookAll();
+                        if (annealing != null) annealing.stop();
+                        lastImprovementTime = System.currentTimeMillis();
+                        lastBestImprovement = lastImprovementTime;
+                        lastImprovementIter = iters;
+                        probe.add(SolverMetrics.MIGRATIONS, 1);
+                        probe.lap(SolverMetrics.RESET_NS, t);
+                        continue;
                     }
-                } else {
-                    int blockSize = minBlock + rand.nextInt(maxBlock - minBlock + 1);
-                    blockH = blockSize;
-                    blockW = blockSize;
                 }
-                startI = rand.nextInt(Math.max(1, n - blockH + 1));
-                startJ = rand.nextInt(Math.max(1, n - blockW + 1));
-
-                for (int i = startI; i < startI + blockH && i < n; i++)
-                    for (int j = startJ; j < startJ + blockW && j < n; j++)
-                        if (grid[i][j] == '#' && origGrid[i][j] != '#') {
-                            currentScore -= neighBlacks[i][j];
-                            if (isBlocking[i][j]) {
-                                isBlocking[i][j] = false;
-                                int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                                int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                                for (int k = r0; k <= r1; k++)
-                                    for (int l = c0; l <= c1; l++) {
-                                        if (k==i && l==j) continue;
-                                        blockingCount[k][l]--;
-                                    }
-                            }
-                            grid[i][j] = '.';
-                            int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
-                            int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
-                            for (int k = r0; k <= r1; k++)
-                                for (int l = c0; l <= c1; l++) {
-                                    if (k==i && l==j) continue;
-                                    neighBlacks[k][l]--;
-                                    neighWhites[k][l]++;
-                                    if (grid[k][l] == '#' && isBlocking[k][l]
-                                            && neighBlacks[k][l] < c && neighWhites[k][l] > b) {
-                                        isBlocking[k][l] = false;
-                                        int r2 = Math.max(0,k-d), r3 = Math.min(n-1,k+d);
-                                        int c2 = Math.max(0,l-d), c3 = Math.min(n-1,l+d);
-                                        for (int x = r2; x <= r3; x++)
-                                            for (int y = c2; y <= c3; y++) {
-                                                if (x==k && y==l) continue;
-                                                blockingCount[x][y]--;
-                                            }
-                                    }
-                                }
-                        }
-            }
-        }
-        // ── End main loop ─────────────────────────────────────────────────────────
-
-        return new AlgorithmResult(bestScore, bestGrid);
-    }
 
-    private static void writeSolutions(List<GridCase> grids, String path, int caseOffset) {
-        try (java.io.PrintWriter pw = new java.io.PrintWriter(new java.io.FileWriter(path))) {
-            pw.println("Barvanje");
-            pw.println(grids.size());
-            for (int i = 0; i < grids.size(); i++) {
-                GridCase g = grids.get(i);
-                pw.println();
-                pw.println(i + caseOffset);
-                pw.println(g.n + " " + g.d + " " + g.b + " " + g.c);
-                for (List<Character> row : g.grid) {
-                    for (char cell : row) pw.print(cell);
-                    pw.println();
+                // Annealing replaces the reset and the ruin below.
+                if (annealing != null) continue;
+
+                // ── Phase 3 (every 20 iters): hard reset to best ─────────────────────
+                // Undoes only the journaled flips since the last save (a full rebuild
+                // if the journal overflowed), so it runs on every case.
+                if (iters % 20 == 0) {
+                    long t = System.nanoTime();
+                    st.rollback();
+                    dirty.all();
+                    swaps.lookAll();
+                    probe.add(SolverMetrics.ROLLBACKS, 1);
+                    probe.lap(SolverMetrics.RESET_NS, t);
+                    continue;
                 }
+
+                // ── Phase 4: ruin ─────────────────────────────────────────────────────
+                // Alternate between different ruin strategies for diversity:
+                // rectangle, scatter and band (see Ruin).
+                int ruinType = iters % Ruin.TYPES;
+                long ruinStart = System.nanoTime();
+                int ruined = ruin.run(ruinType, rand, iters);
+                probe.ruin(ruinType, ruined);
+                probe.lap(SolverMetrics.RUIN_NS, ruinStart);
             }
-        } catch (java.io.IOException e) {
-            e.printStackTrace();
+            // ── End main loop ─────────────────────────────────────────────────────────
+        } finally {
+            // Also when the run throws, so the probe does not stay live.
+            probe.close(bestScore);
         }
+
+        return new AlgorithmResult(bestScore, st.best.clone());
     }
 }
@@ -0,0 +1,107 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Batched greedy fill: instead of one placement per pop, it takes a set of
+ * top-bucket cells that are pairwise more than 2d apart and places them
+ * together with SolverState.placeBatch().
+ *
+ * Two cells that far apart cannot interact: neither is in the other's window,
+ * and no black is within d of both.  So placing the set at once gives exactly
+ * the grid that placing its cells one by one would, and each of them still has
+ * the count and eligibility it had when the batch was taken.  It is not
+ * strictly the greedy order, though: a placement raises the cells in its
+ * window to top + 1, and the one-by-one fill would take one of those next,
+ * while the batch places its other top-count cells first.  The raised cells
+ * then head the queue for the next batch.  With a fresh n = 1000 grid that
+ * is ~500K placements, and large batches spread their window updates over all
+ * workers.  The queue is then brought up to date one placement at a time
+ * (GreedyFill.settle()).
+ *
+ * Building a batch walks the top bucket from a random entry.  Cells within 2d
+ * of one already chosen stay queued for a later batch.  In the tabu mode a
+ * tabu cell leaves the queue and is marked dirty, as in GreedyFill's own loop.
+ */
+final class BatchFill {
+
+    private static final int MAX_BATCH = 256;
+
+    private final SolverState st;
+    private final BucketQueue queue;
+    private final ForkJoinPool pool;
+    private final GreedyFill fill;
+    private final DirtyRegion dirty;
+    private final TabuList tabu;   // null outside the tabu mode
+    private final int n;
+    private final int d;
+    private final int[] batch = new int[MAX_BATCH];
+    private final int[] seen;   // walk stamp per code, so a bucket is walked once
+    private int stamp;
+    long placements, pops;  // for SolverMetrics
+
+    /** tabu may be null. */
+    BatchFill(SolverState st, BucketQueue queue, ForkJoinPool pool, GreedyFill fill,
+              DirtyRegion dirty, TabuList tabu) {
+        this.st = st;
+        this.queue = queue;
+        this.pool = pool;
+        this.fill = fill;
+        this.dirty = dirty;
+        this.tabu = tabu;
+        this.n = st.n;
+        this.d = st.d;
+        this.seen = new int[n * n];
+    }
+
+    /**
+     * Fills until the queue is empty (returns true) or the deadline passes
+     * (returns false).  iter is the solver's iteration, for the tabu list.
+     */
+    boolean run(Random rand, long deadline, int iter) {
+        int batches = 0;
+        while (true) {
+            int top = queue.top();
+            if (top < 0) return true;
+            if ((++batches & 63) == 0 && System.currentTimeMillis() >= deadline) return false;
+
+            stamp++;
+            int k = 0;
+            int code = queue.pick(top, rand.nextInt(32));
+            for (int walked = 0; walked < 4 * MAX_BATCH && k < MAX_BATCH && seen[code] != stamp; walked++) {
+                seen[code] = stamp;
+                int nx = queue.next(code);
+                boolean last = nx == code;
+                if (tabu != null && tabu.tabu(code, iter)) {
+                    // Recently ruined: stays white this fill, the next one looks again.
+                    queue.remove(code);
+                    pops++;
+                    dirty.mark(code / n, code % n);
+                } else if (farFromBatch(code, k)) {
+                    queue.remove(code);
+                    batch[k++] = code;
+                    pops++;
+                }
+                if (last) break;
+                code = nx;
+            }
+
+            placements += k;
+            // Small batches aren't worth a fork.
+            if (k >= 2 * pool.getParallelism()) {
+                st.placeBatch(batch, k, pool);
+            } else {
+                for (int x = 0; x < k; x++) st.place(batch[x]);
+            }
+            for (int x = 0; x < k; x++) fill.settle(batch[x]);
+        }
+    }
+
+    private boolean farFromBatch(int code, int k) {
+        int i = code / n, j = code - i * n;
+        for (int x = 0; x < k; x++) {
+            int bi = batch[x] / n, bj = batch[x] - bi * n;
+            if (Math.abs(bi - i) <= 2 * d && Math.abs(bj - j) <= 2 * d) return false;
+        }
+        return true;
+    }
+}
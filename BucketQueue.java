@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+/**
+ * Bucket priority queue over cell codes for the greedy fill, with O(1) insert,
+ * remove and change-key.
+ *
+ * It is intrusive: each bucket is a circular doubly-linked list threaded
+ * through next[]/prev[], and where[code] is the bucket a code is in (or −1).
+ * A code is therefore in at most one bucket, memory is fixed at three ints per
+ * cell plus one per bucket, and moving a code to another bucket is an unlink
+ * and a link.  There are no duplicate entries to discard at pop time and no
+ * bucket arrays to grow.
+ */
+final class BucketQueue {
+
+    private final int[] next;
+    private final int[] prev;
+    private final int[] where; // bucket of each code, −1 if not queued
+    private final int[] head;  // first code of each bucket, −1 if empty
+    private int top = -1;      // no bucket above top is non-empty
+
+    BucketQueue(int cells, int buckets) {
+        this.next = new int[cells];
+        this.prev = new int[cells];
+        this.where = new int[cells];
+        this.head = new int[buckets];
+        clear();
+    }
+
+    void clear() {
+        Arrays.fill(where, -1);
+        Arrays.fill(head, -1);
+        top = -1;
+    }
+
+    boolean contains(int code) {
+        return where[code] >= 0;
+    }
+
+    /** Bucket of code, or −1 if it is not queued. */
+    int bucket(int code) {
+        return where[code];
+    }
+
+    /** Highest non-empty bucket, or −1 if the queue is empty. */
+    int top() {
+        while (top >= 0 && head[top] < 0) top--;
+        return top;
+    }
+
+    /**
+     * The code skip places after the head of the non-empty bucket p (wrapping
+     * around).  A small random skip spreads ties across the bucket instead of
+     * always taking the most recently moved cell, at O(skip) per pick.
+     */
+    int pick(int p, int skip) {
+        int code = head[p];
+        for (int k = 0; k < skip; k++) code = next[code];
+        return code;
+    }
+
+    /** The code after a queued code in its bucket (wrapping around). */
+    int next(int code) {
+        return next[code];
+    }
+
+    /**
+     * Adds code (not yet queued) to bucket p, at the front or the back.  Callers
+     * pick the end at random so ties are not broken in scan order.
+     */
+    void insert(int code, int p, boolean front) {
+        int h = head[p];
+        if (h < 0) {
+            next[code] = code;
+            prev[code] = code;
+            head[p] = code;
+        } else {
+            // Link in just before the head, i.e. at the back of the circle.
+            int t = prev[h];
+            next[t] = code;
+            prev[code] = t;
+            next[code] = h;
+            prev[h] = code;
+            if (front) head[p] = code;
+        }
+        where[code] = p;
+        if (p > top) top = p;
+    }
+
+    /** Removes a queued code from its bucket. */
+    void remove(int code) {
+        int p = where[code];
+        int nx = next[code];
+        if (nx == code) {
+            head[p] = -1;
+        } else {
+            int pv = prev[code];
+            next[pv] = nx;
+            prev[nx] = pv;
+            if (head[p] == code) head[p] = nx;
+        }
+        where[code] = -1;
+    }
+
+    /** Moves a queued code to bucket p (no-op if it is already there). */
+    void move(int code, int p, boolean front) {
+        if (where[code] == p) return;
+        remove(code);
+        insert(code, p, front);
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe checkpoints of one case: per solver thread its best grid, score,
+ * RNG seed and the case's elapsed budget, plus one final record once the case
+ * is done.
+ *
+ * The solver thread only copies its best grid and queues it.  Encoding and
+ * I/O happen on a single background writer thread.  Each record is written
+ * and synced to a temporary file, which is then renamed over the old one, so a
+ * kill at any moment leaves either the previous or the new checkpoint, never
+ * a torn one.  A CRC32 at the end catches anything else.
+ *
+ * java.util.Random exposes no state.  So at each checkpoint the solver draws
+ * a fresh seed, reseeds itself with it and records it.  A resumed thread that
+ * starts from new Random(seed) then continues the same sequence.
+ *
+ * Records carry no run identity, so a fresh run starts with clear(): a later
+ * --resume then only sees this run's records, not a finished case or an
+ * elapsed budget left behind by an earlier one.
+ *
+ * Layout: magic, n, score, seed, elapsed ms, done flag, n² cell bytes, CRC32.
+ */
+final class Checkpoints {
+
+    private static final int MAGIC = 0x42434B31; // "BCK1"
+
+    /** One thread's (or the finished case's) checkpoint. */
+    static final class Entry {
+        final long score;
+        final long seed;
+        final long elapsedMs;
+        final boolean done;
+        final byte[] grid;
+
+        Entry(long score, long seed, long elapsedMs, boolean done, byte[] grid) {
+            this.score = score;
+            this.seed = seed;
+            this.elapsedMs = elapsedMs;
+            this.done = done;
+            this.grid = grid;
+        }
+    }
+
+    // One writer for all cases: checkpoints are rare and I/O-bound.
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "checkpoint-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path dir;
+    private final int caseNum;
+    private final int n;
+    private final long elapsedBefore;
+    private final long created = System.currentTimeMillis();
+
+    /** elapsedBefore: budget the case had already used in earlier runs. */
+    Checkpoints(Path dir, int caseNum, int n, long elapsedBefore) {
+        this.dir = dir;
+        this.caseNum = caseNum;
+        this.n = n;
+        this.elapsedBefore = elapsedBefore;
+    }
+
+    /** Budget the case has used so far, across runs. */
+    long elapsed() {
+        return elapsedBefore + System.currentTimeMillis() - created;
+    }
+
+    /** Queues a checkpoint of thread threadId; returns at once. */
+    void save(int threadId, long score, byte[] best, long seed) {
+        byte[] grid = best.clone();
+        long elapsed = elapsed();
+        writer.execute(() -> write(file(threadId), new Entry(score, seed, elapsed, false, grid)));
+    }
+
+    /** Records the finished case and waits until it is on disk. */
+    void saveDone(long score, byte[] grid) throws Exception {
+        long elapsed = elapsed();
+        writer.submit(() -> write(file(-1), new Entry(score, 0, elapsed, true, grid.clone()))).get();
+    }
+
+    /** Thread threadId's checkpoint (-1: the finished case), or null if absent or damaged. */
+    Entry load(int threadId) {
+        Path f = file(threadId);
+        if (!Files.exists(f)) return null;
+        try {
+            byte[] all = Files.readAllBytes(f);
+            if (all.length < 4) return null;
+            CRC32 crc = new CRC32();
+            crc.update(all, 0, all.length - 4);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(all));
+            if (in.readInt() != MAGIC || in.readInt() != n) return null;
+            long score = in.readLong(), seed = in.readLong(), elapsed = in.readLong();
+            boolean done = in.readBoolean();
+            byte[] grid = new byte[n * n];
+            in.readFully(grid);
+            if (in.readInt() != (int) crc.getValue()) return null;
+            return new Entry(score, seed, elapsed, done, grid);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Path file(int threadId) {
+        return dir.resolve("case" + caseNum + (threadId < 0 ? "-done" : "-t" + threadId) + ".ckpt");
+    }
+
+    private void write(Path f, Entry e) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(n * n + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(n);
+            out.writeLong(e.score);
+            out.writeLong(e.seed);
+            out.writeLong(e.elapsedMs);
+            out.writeBoolean(e.done);
+            out.write(e.grid);
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            Files.createDirectories(dir);
+            Path tmp = f.resolveSibling(f.getFileName() + ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+                while (buf.hasRemaining()) ch.write(buf);
+                ch.force(true); // on disk before the rename makes it the checkpoint
+            }
+            Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.out.println("  ! checkpoint " + f + " failed: " + ex);
+        }
+    }
+
+    /** Deletes every case's checkpoints (and leftover temporary files) in dir. */
+    static void clear(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "case*.ckpt{,.tmp}")) {
+            for (Path f : files) Files.delete(f);
+        }
+    }
+
+    /** Waits for queued checkpoints, e.g. before exiting. */
+    static void flush() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Slack-based constraint index: answers "can this white cell turn black?" with
+ * a range-minimum query over its window instead of a maintained blockingCount.
+ *
+ * Every black cell x has a slack
+ *     slack(x) = min(c − blacks(x), whites(x) − b),
+ * i.e. how many more black neighbours it can take before it breaks either
+ * limit.  Placing a black anywhere in x's window lowers both terms by one, so a
+ * placement is a range-add of −1 over the window (+1 for a removal), and a
+ * white cell may turn black only if every black in its window has slack ≥ 1.
+ * Non-black cells hold FREE, which is large enough that no sequence of window
+ * updates brings it anywhere near 1.
+ *
+ * The trees are short[] when (2d+1)² ≤ MAX_WINDOW (d ≤ 44, every case in
+ * Barvanje.txt), like Counters, and int[] for wider windows.  A slot only
+ * drifts from the value it was set to by the net change of blacks in one
+ * window, at most (2d+1)² either way.  In the short trees a stored slack is
+ * clamped to [−NARROW_FREE/2, NARROW_FREE], so every stored value, and every
+ * pending add, stays inside ±NARROW_FREE + MAX_WINDOW < 2¹⁵.
+ *
+ * The old scheme flipped a neighbour to "blocking" and then incremented
+ * blockingCount over that neighbour's whole window: a (2d+1)² fan-out inside
+ * the (2d+1)² propagation loop, O(d⁴) per move in the worst case.  Here each
+ * row is a min segment tree with non-propagating range add, so a move costs
+ * O(d·log n) and so does a query.
+ */
+final class ConstraintIndex {
+
+    /** Slack of white and red cells: no limit. */
+    static final int FREE = 1 << 29;
+
+    // What FREE is stored as in the short trees, and the largest window,
+    // (2d+1)², they allow.
+    private static final int NARROW_FREE = 1 << 14;
+    static final int MAX_WINDOW = NARROW_FREE / 2 - 1;
+
+    private final int n;
+    private final int d;
+    private final int size;   // leaves per row tree: smallest power of two ≥ n
+    private final int height; // log₂(size)
+
+    // min[row*2*size + p]: minimum over node p's subtree, including p's own
+    // pending add but none of its ancestors'.  Leaves are p = size + col.
+    // pend[row*size + p]: add applied to internal node p but not yet pushed to
+    // its children.  Exactly one pair is used: short when the window allows,
+    // int otherwise.
+    private final short[] min16, pend16;
+    private final int[] min32, pend32;
+    private final int free;   // FREE as stored
+
+    ConstraintIndex(int n, int d) {
+        this.n = n;
+        this.d = d;
+        int s = 1, h = 0;
+        while (s < n) { s <<= 1; h++; }
+        this.size = s;
+        this.height = h;
+        boolean narrow = (2*d+1)*(2*d+1) <= MAX_WINDOW;
+        this.min16 = narrow ? new short[n * 2 * s] : null;
+        this.pend16 = narrow ? new short[n * s] : null;
+        this.min32 = narrow ? null : new int[n * 2 * s];
+        this.pend32 = narrow ? null : new int[n * s];
+        this.free = narrow ? NARROW_FREE : FREE;
+    }
+
+    static int slack(int blacks, int whites, int b, int c) {
+        return Math.min(c - blacks, whites - b);
+    }
+
+    /**
+     * Rebuilds every row tree from up-to-date neighbour counts (O(n²)).  rowBuf
+     * must hold at least n ints.
+     */
+    void load(byte[] cell, NeighbourCounts counts, int b, int c, int[] rowBuf) {
+        if (pend16 != null) java.util.Arrays.fill(pend16, (short) 0);
+        else java.util.Arrays.fill(pend32, 0);
+        for (int row = 0; row < n; row++) {
+            int tb = row * 2 * size;
+            counts.readRow(row, 0, n - 1, rowBuf);
+            for (int col = 0; col < size; col++) {
+                int v = FREE;
+                if (col < n && cell[row * n + col] == SolverState.BLACK)
+                    v = slack(rowBuf[col], counts.nonRed.get(row * n + col) - rowBuf[col], b, c);
+                setMin(tb + size + col, stored(v));
+            }
+            for (int p = size - 1; p >= 1; p--)
+                setMin(tb + p, Math.min(min(tb + 2*p), min(tb + 2*p + 1)));
+        }
+    }
+
+    /** Sets the slack of cell (row, col); FREE when it is not black. */
+    void set(int row, int col, int value) {
+        int tb = row * 2 * size, pb = row * size, p = col + size;
+        push(tb, pb, p);
+        setMin(tb + p, stored(value));
+        pull(tb, pb, p);
+    }
+
+    /** Adds delta to the slack of every cell in (i,j)'s window, (i,j) included. */
+    void addWindow(int i, int j, int delta) {
+        addWindow(i, j, delta, 0, n - 1);
+    }
+
+    /** addWindow() limited to rows lo..hi; each row's tree is separate. */
+    void addWindow(int i, int j, int delta, int lo, int hi) {
+        int r0 = Math.max(lo,i-d), r1 = Math.min(hi,i+d);
+        int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
+        for (int k = r0; k <= r1; k++)
+            addRange(k * 2 * size, k * size, c0 + size, c1 + 1 + size, delta);
+    }
+
+    /**
+     * True if every black cell in (i,j)'s window has slack ≥ 1, i.e. one more
+     * black there would not break any of them.  (i,j) itself must not be black.
+     */
+    boolean clear(int i, int j) {
+        int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
+        int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
+        for (int k = r0; k <= r1; k++)
+            if (minRange(k * 2 * size, k * size, c0 + size, c1 + 1 + size) < 1) return false;
+        return true;
+    }
+
+    /**
+     * Writes the codes of all cells in (i,j)'s window with slack ≤ 0 into out
+     * and returns how many there are.  Right after a valid placement at (i,j)
+     * these are exactly the blacks it made tight.  out needs (2d+1)² slots.
+     */
+    int tight(int i, int j, int[] out) {
+        int r0 = Math.max(0,i-d), r1 = Math.min(n-1,i+d);
+        int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
+        int cnt = 0;
+        for (int k = r0; k <= r1; k++)
+            cnt = collect(k, 1, 0, size, c0, c1 + 1, 0, out, cnt);
+        return cnt;
+    }
+
+    /** Descends only into subtrees of node p (covering [lo, hi)) whose min is ≤ 0. */
+    private int collect(int row, int p, int lo, int hi, int l, int r, int acc, int[] out, int cnt) {
+        if (hi <= l || r <= lo || min(row * 2 * size + p) + acc > 0) return cnt;
+        if (p >= size) {
+            out[cnt++] = row * n + (p - size);
+            return cnt;
+        }
+        acc += pend(row * size + p);
+        int mid = (lo + hi) >>> 1;
+        cnt = collect(row, 2*p, lo, mid, l, r, acc, out, cnt);
+        return collect(row, 2*p + 1, mid, hi, l, r, acc, out, cnt);
+    }
+
+    // ── Storage ──────────────────────────────────────────────────────────────
+
+    /** value as stored: the short trees hold FREE as NARROW_FREE and clamp below. */
+    private int stored(int value) {
+        return free == FREE ? value : Math.max(-NARROW_FREE / 2, Math.min(NARROW_FREE, value));
+    }
+
+    private int min(int x) {
+        return min16 != null ? min16[x] : min32[x];
+    }
+
+    private void setMin(int x, int v) {
+        if (min16 != null) min16[x] = (short) v;
+        else min32[x] = v;
+    }
+
+    private int pend(int x) {
+        return pend16 != null ? pend16[x] : pend32[x];
+    }
+
+    private void setPend(int x, int v) {
+        if (pend16 != null) pend16[x] = (short) v;
+        else pend32[x] = v;
+    }
+
+    // ── Per-row segment tree (leaves [l, r) given as node indices) ───────────
+
+    private void apply(int tb, int pb, int p, int delta) {
+        setMin(tb + p, min(tb + p) + delta);
+        if (p < size) setPend(pb + p, pend(pb + p) + delta);
+    }
+
+    /** Recomputes the ancestors of node p from their children. */
+    private void pull(int tb, int pb, int p) {
+        while (p > 1) {
+            p >>= 1;
+            setMin(tb + p, Math.min(min(tb + 2*p), min(tb + 2*p + 1)) + pend(pb + p));
+        }
+    }
+
+    /** Pushes pending adds from the root down to node p's parent. */
+    private void push(int tb, int pb, int p) {
+        for (int s = height; s > 0; s--) {
+            int q = p >> s;
+            int v = pend(pb + q);
+            if (v != 0) {
+                apply(tb, pb, 2*q, v);
+                apply(tb, pb, 2*q + 1, v);
+                setPend(pb + q, 0);
+            }
+        }
+    }
+
+    private void addRange(int tb, int pb, int l, int r, int delta) {
+        int l0 = l, r0 = r;
+        for (; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) apply(tb, pb, l++, delta);
+            if ((r & 1) != 0) apply(tb, pb, --r, delta);
+        }
+        pull(tb, pb, l0);
+        pull(tb, pb, r0 - 1);
+    }
+
+    private int minRange(int tb, int pb, int l, int r) {
+        push(tb, pb, l);
+        push(tb, pb, r - 1);
+        int res = free;
+        for (; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) res = Math.min(res, min(tb + l++));
+            if ((r & 1) != 0) res = Math.min(res, min(tb + --r));
+        }
+        return res;
+    }
+}
@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-size array of small non-negative counters, stored in the narrowest type
+ * that fits the largest possible value.
+ *
+ * Every counter in the solver is bounded by the window size (2d+1)², so for all
+ * d ≤ 89 a short is enough and the arrays take half the memory (and half the
+ * cache lines) of int[].  Optionally the storage lives off-heap in a direct
+ * buffer, which keeps the bulk of each solver thread's state out of the Java
+ * heap when many threads share a small -Xmx.
+ *
+ * The storage mode is fixed at construction; every method switches on it once,
+ * outside of any loop, so the hot range updates stay plain array loops.
+ */
+final class Counters {
+
+    private final int size;
+    private final short[] narrow;   // used when max < Short.MAX_VALUE and on-heap
+    private final int[] wide;       // used when max doesn't fit a short and on-heap
+    private final ByteBuffer direct; // off-heap backing (narrow or wide elements)
+    private final boolean isShort;
+
+    Counters(int size, int max, boolean offHeap) {
+        this.size = size;
+        this.isShort = max < Short.MAX_VALUE;
+        if (offHeap) {
+            this.direct = ByteBuffer.allocateDirect(size * (isShort ? 2 : 4)).order(ByteOrder.nativeOrder());
+            this.narrow = null;
+            this.wide = null;
+        } else {
+            this.direct = null;
+            this.narrow = isShort ? new short[size] : null;
+            this.wide = isShort ? null : new int[size];
+        }
+    }
+
+    int get(int idx) {
+        if (narrow != null) return narrow[idx];
+        if (wide != null) return wide[idx];
+        return isShort ? direct.getShort(idx << 1) : direct.getInt(idx << 2);
+    }
+
+    void set(int idx, int value) {
+        if (narrow != null) narrow[idx] = (short) value;
+        else if (wide != null) wide[idx] = value;
+        else if (isShort) direct.putShort(idx << 1, (short) value);
+        else direct.putInt(idx << 2, value);
+    }
+
+    void add(int idx, int delta) {
+        set(idx, get(idx) + delta);
+    }
+
+    /** Adds delta to every counter in [from, to). */
+    void addRange(int from, int to, int delta) {
+        if (narrow != null) {
+            short[] a = narrow;
+            for (int x = from; x < to; x++) a[x] += delta;
+        } else if (wide != null) {
+            int[] a = wide;
+            for (int x = from; x < to; x++) a[x] += delta;
+        } else if (isShort) {
+            for (int x = from; x < to; x++) direct.putShort(x << 1, (short) (direct.getShort(x << 1) + delta));
+        } else {
+            for (int x = from; x < to; x++) direct.putInt(x << 2, direct.getInt(x << 2) + delta);
+        }
+    }
+
+    /** Copies counters [from, from+len) into out[0..len). */
+    void read(int from, int len, int[] out) {
+        if (narrow != null) {
+            for (int x = 0; x < len; x++) out[x] = narrow[from + x];
+        } else if (wide != null) {
+            System.arraycopy(wide, from, out, 0, len);
+        } else {
+            for (int x = 0; x < len; x++) out[x] = get(from + x);
+        }
+    }
+
+    /** Overwrites counters [from, from+len) with src[0..len). */
+    void write(int from, int len, int[] src) {
+        if (narrow != null) {
+            for (int x = 0; x < len; x++) narrow[from + x] = (short) src[x];
+        } else if (wide != null) {
+            System.arraycopy(src, 0, wide, from, len);
+        } else {
+            for (int x = 0; x < len; x++) set(from + x, src[x]);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Cells whose eligibility may have changed since the last greedy fill, kept as
+ * one column span per row.
+ *
+ * A fill runs until no white cell is eligible, and placements only ever take
+ * eligibility away.  So the next fill only has to look at cells near a cell
+ * that turned white since then.  Turning (i,j) white changes the counts of
+ * cells within d, and the slack of blacks within d, which are the limits for
+ * whites within 2d.  Cells outside the 2d-dilation of the removed cells cannot
+ * have become eligible.  The ruin operators mark what they remove, so phase 1
+ * of an iteration costs O(ruin area + d·ruin perimeter) instead of O(n²).
+ *
+ * The fill uses reach 2d; SwapSearch uses the same structure with a wider
+ * reach for its don't-look bits.  A region can be clipped to a rectangle, so
+ * a TileSearch tile only ever fills its interior.
+ *
+ * Spans are a per-row hull, so a row with two far-apart marks is rescanned in
+ * between as well.  That only costs time, never correctness.
+ */
+final class DirtyRegion {
+
+    private final int n;
+    private final int reach;   // how far a mark spreads (Chebyshev distance)
+    private final int top, bottom, left, right;  // the clip rectangle, inclusive
+    private final int[] lo;    // lo[i]..hi[i] = dirty columns of row i (empty if lo > hi)
+    private final int[] hi;
+    private int rowLo, rowHi;  // rows outside rowLo..rowHi are clean
+
+    DirtyRegion(int n, int reach) {
+        this(n, reach, 0, n - 1, 0, n - 1);
+    }
+
+    /** A region that never leaves rows top..bottom, columns left..right. */
+    DirtyRegion(int n, int reach, int top, int bottom, int left, int right) {
+        this.n = n;
+        this.reach = reach;
+        this.top = top;
+        this.bottom = bottom;
+        this.left = left;
+        this.right = right;
+        this.lo = new int[n];
+        this.hi = new int[n];
+        clear();
+        all();
+    }
+
+    /** Marks the whole grid, e.g. after a load() or rollback(). */
+    void all() {
+        for (int i = top; i <= bottom; i++) {
+            lo[i] = left;
+            hi[i] = right;
+        }
+        rowLo = top;
+        rowHi = bottom;
+    }
+
+    void clear() {
+        for (int i = 0; i < n; i++) {
+            lo[i] = n;
+            hi[i] = -1;
+        }
+        rowLo = n;
+        rowHi = -1;
+    }
+
+    /** Cell (i,j) changed (for the fill: turned white). */
+    void mark(int i, int j) {
+        markRect(i, i, j, j);
+    }
+
+    /** Some cells in rows i0..i1, columns j0..j1 (inclusive) changed. */
+    void markRect(int i0, int i1, int j0, int j1) {
+        int r0 = Math.max(top, i0 - reach), r1 = Math.min(bottom, i1 + reach);
+        int c0 = Math.max(left, j0 - reach), c1 = Math.min(right, j1 + reach);
+        if (r0 > r1 || c0 > c1) return;
+        for (int r = r0; r <= r1; r++) {
+            if (c0 < lo[r]) lo[r] = c0;
+            if (c1 > hi[r]) hi[r] = c1;
+        }
+        if (r0 < rowLo) rowLo = r0;
+        if (r1 > rowHi) rowHi = r1;
+    }
+
+    /**
+     * Writes the codes of all cells in the region whose state is state into
+     * out, clears the region and returns how many there were.
+     */
+    int drain(byte[] cell, byte state, int[] out) {
+        int m = 0;
+        for (int i = rowLo; i <= rowHi; i++) {
+            for (int j = lo[i]; j <= hi[i]; j++)
+                if (cell[i * n + j] == state) out[m++] = i * n + j;
+            lo[i] = n;
+            hi[i] = -1;
+        }
+        rowLo = n;
+        rowHi = -1;
+        return m;
+    }
+}
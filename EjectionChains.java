@@ -0,0 +1,137 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compound k-out, (k+1)-in moves for k = 1, 2: take out one added black, or
+ * two within distance d of each other, then greedily put in k+1 whites within
+ * 2d of them that are eligible at that point.  A move is kept only if all k+1
+ * went in and the score rose; otherwise it is undone in reverse order.
+ *
+ * A single swap can never add a black, and a complete fill leaves no white
+ * eligible, so a state where both are stuck can still have a k-out, (k+1)-in
+ * improvement: the removals free slack that two or three whites share.
+ *
+ * Gains are the deltas place()/remove() already apply to the score.  The
+ * candidates are the whites in the area sorted by count.  Each placement gains
+ * at most the count it was sorted under plus the blacks put in before it by
+ * the same move, so the scan stops as soon as the remaining candidates cannot
+ * make up the loss.
+ * A rejected move also drops its flips from the undo journal, so the many
+ * failed tries between two saves do not overflow it.
+ */
+final class EjectionChains {
+
+    private final SolverState st;
+    private final int n;
+    private final int d;
+    private final DirtyRegion refill;
+    private final SwapSearch swaps;
+    private final long[] cand;      // candidate whites as count << 32 | code
+    private final int[] rowBuf;
+    private final int[] out = new int[2];
+    private final int[] in = new int[3];
+    long attempts, accepts;         // moves tried and kept, for SolverMetrics
+
+    EjectionChains(SolverState st, DirtyRegion refill, SwapSearch swaps) {
+        this.st = st;
+        this.n = st.n;
+        this.d = st.d;
+        this.refill = refill;
+        this.swaps = swaps;
+        int side = Math.min(n, 5*d + 1); // 2d around two cells up to d apart
+        this.cand = new long[side * side];
+        this.rowBuf = new int[n];
+    }
+
+    /** Tries moves until the deadline; returns how many were accepted. */
+    int run(long deadline, Random rand) {
+        return run(deadline, rand, Long.MAX_VALUE);
+    }
+
+    /** Same, but also stops after maxTries moves. */
+    int run(long deadline, Random rand, long maxTries) {
+        int accepted = 0;
+        for (long tries = 1; tries <= maxTries; tries++) {
+            if ((tries & 15) == 0 && System.currentTimeMillis() >= deadline) break;
+            attempts++;
+            if (attempt(rand)) accepted++;
+        }
+        accepts += accepted;
+        return accepted;
+    }
+
+    private boolean attempt(Random rand) {
+        int s1 = randomRemovable(rand);
+        if (s1 < 0) return false;
+        int i1 = s1 / n, j1 = s1 % n;
+        int k = 1;
+        out[0] = s1;
+        if (rand.nextBoolean()) {
+            // A second black in s1's window, so the two removals free slack for
+            // the same whites.
+            for (int t = 0; t < 16; t++) {
+                int i2 = i1 + rand.nextInt(2*d + 1) - d, j2 = j1 + rand.nextInt(2*d + 1) - d;
+                if (i2 < 0 || i2 >= n || j2 < 0 || j2 >= n) continue;
+                int s2 = i2 * n + j2;
+                if (s2 != s1 && st.removable(s2)) { out[k++] = s2; break; }
+            }
+        }
+
+        long before = st.score;
+        int mark = st.journalMark();
+        for (int x = 0; x < k; x++) st.remove(out[x]);
+        int r0 = n, r1 = -1, c0 = n, c1 = -1;
+        for (int x = 0; x < k; x++) {
+            int i = out[x] / n, j = out[x] % n;
+            r0 = Math.min(r0, i); r1 = Math.max(r1, i);
+            c0 = Math.min(c0, j); c1 = Math.max(c1, j);
+        }
+        r0 = Math.max(0, r0 - 2*d); r1 = Math.min(n - 1, r1 + 2*d);
+        c0 = Math.max(0, c0 - 2*d); c1 = Math.min(n - 1, c1 + 2*d);
+
+        NeighbourCounts counts = st.counts;
+        byte[] cell = st.cell;
+        int m = 0;
+        for (int i = r0; i <= r1; i++) {
+            counts.readRow(i, c0, c1, rowBuf);
+            for (int j = c0; j <= c1; j++)
+                if (cell[i * n + j] == SolverState.WHITE) cand[m++] = (long) rowBuf[j - c0] << 32 | (i * n + j);
+        }
+        Arrays.sort(cand, 0, m);
+
+        // Greedy insertion, best count first, in one pass: a placement only takes
+        // eligibility away, so an entry skipped once stays ineligible.
+        int placed = 0;
+        for (int x = m - 1; x >= 0 && placed <= k; x--) {
+            long need = before - st.score + 1;
+            int remaining = k + 1 - placed;
+            if ((long) remaining * ((int) (cand[x] >>> 32) + k) < need) break;
+            int w = (int) cand[x];
+            if (cell[w] != SolverState.WHITE || !st.canPlace(w)) continue;
+            st.place(w);
+            in[placed++] = w;
+        }
+
+        if (placed == k + 1 && st.score > before) {
+            for (int x = 0; x < k; x++) {
+                int i = out[x] / n, j = out[x] % n;
+                refill.mark(i, j);
+                swaps.changed(i, j);
+            }
+            for (int x = 0; x < placed; x++) swaps.changed(in[x] / n, in[x] % n);
+            return true;
+        }
+        for (int x = placed - 1; x >= 0; x--) st.remove(in[x]);
+        for (int x = k - 1; x >= 0; x--) st.place(out[x]);
+        st.unwind(mark);
+        return false;
+    }
+
+    private int randomRemovable(Random rand) {
+        for (int t = 0; t < 64; t++) {
+            int code = rand.nextInt(n * n);
+            if (st.removable(code)) return code;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shared elite pool for the island model in BarvanjeParallel: one slot per
+ * solver thread holding that thread's last published best grid.
+ *
+ * Publishing swaps in a fresh immutable Elite (score plus a private copy of
+ * the grid), so readers never see a half-written grid and no lock is taken;
+ * each slot has a single writer.  Who a thread reads from is the topology:
+ *   ring — the next thread (id + 1 mod N), so good grids spread one hop per
+ *          migration and the islands stay diverse for longer;
+ *   all  — the best published grid of any thread.
+ */
+final class ElitePool {
+
+    static final class Elite {
+        final int threadId;
+        final long score;
+        final byte[] grid;
+
+        Elite(int threadId, long score, byte[] grid) {
+            this.threadId = threadId;
+            this.score = score;
+            this.grid = grid;
+        }
+    }
+
+    private final AtomicReferenceArray<Elite> slots;
+    private final boolean ring;
+
+    /** topology is "ring" or "all". */
+    ElitePool(int threads, String topology) {
+        if (!topology.equals("ring") && !topology.equals("all"))
+            throw new IllegalArgumentException("unknown topology " + topology + " (ring or all)");
+        this.slots = new AtomicReferenceArray<>(threads);
+        this.ring = topology.equals("ring");
+    }
+
+    void publish(int threadId, long score, byte[] best) {
+        slots.set(threadId, new Elite(threadId, score, best.clone()));
+    }
+
+    /** The elite threadId should compare itself against, or null if none yet. */
+    Elite donor(int threadId) {
+        if (ring) return slots.get((threadId + 1) % slots.length());
+        Elite best = null;
+        for (int t = 0; t < slots.length(); t++) {
+            Elite e = slots.get(t);
+            if (e != null && t != threadId && (best == null || e.score > best.score)) best = e;
+        }
+        return best;
+    }
+
+    /**
+     * The donor's grid with a random rectangle (a quarter to a half of the side
+     * each way) taken from own.  The seam may break limits; the caller repairs
+     * it with SolverState.repair().
+     */
+    static byte[] recombine(byte[] donor, byte[] own, int n, Random rand) {
+        byte[] child = donor.clone();
+        int h = n / 4 + rand.nextInt(n / 4 + 1), w = n / 4 + rand.nextInt(n / 4 + 1);
+        int i0 = rand.nextInt(n - h + 1), j0 = rand.nextInt(n - w + 1);
+        for (int i = i0; i < i0 + h; i++)
+            System.arraycopy(own, i * n + j0, child, i * n + j0, w);
+        return child;
+    }
+}
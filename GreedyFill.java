@@ -0,0 +1,165 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Phases 1 and 2 of a ruin-and-rebuild iteration: queue the white cells of the
+ * dirty region, then place the cell with the highest black count until no
+ * eligible cell is left.  Barvanje, BarvanjeParallel and the benchmarks share
+ * this one loop.
+ *
+ * The bucket queue is kept exact: after each placement every queued cell in
+ * the window moves up to its new bucket, and cells that just became
+ * ineligible leave the queue, so every pop is a valid, up-to-date candidate
+ * and the top bucket really is the highest count.  A queued cell's bucket is
+ * its count, so the move needs no count query, only the cell's own limits.
+ * (Popping stale entries and re-queuing them instead is cheaper per
+ * placement, but cells whose count grew while they sat in a lower bucket are
+ * never seen, so the fill is no longer greedy: on cases 11 and 12 its grids
+ * score 2–4% lower.)  With a fill pool the placements go in batches (see
+ * BatchFill).
+ */
+final class GreedyFill {
+
+    private final SolverState st;
+    private final NeighbourCounts counts;
+    private final DirtyRegion dirty;
+    private final TabuList tabu;         // null outside the tabu mode
+    private final BatchFill batchFill;   // null without a fill pool
+    private final int n;
+    private final int d;
+    // Bucket queue: bucket p holds white cells (codes i*n+j) whose black count
+    // is p, each cell in at most one bucket, with O(1) insert, move and remove
+    // (see BucketQueue).  The fill always takes from the top bucket.
+    private final BucketQueue queue;
+    private final int[] order;           // phase 1 candidates, shuffled each fill
+    private final int[] tight;
+    private int steps;                   // single placements; throttles the time checks
+    private int salt;                    // per fill: which end of its bucket a moved cell joins
+    long queued, placements, pops;       // for SolverMetrics
+
+    /** tabu and pool may be null. */
+    GreedyFill(SolverState st, DirtyRegion dirty, TabuList tabu, ForkJoinPool pool) {
+        this.st = st;
+        this.counts = st.counts;
+        this.dirty = dirty;
+        this.tabu = tabu;
+        this.n = st.n;
+        this.d = st.d;
+        // maxBucket is the maximum possible black count: the full (2d+1)×(2d+1)
+        // window minus the cell itself.
+        int maxBucket = (2*d+1)*(2*d+1);
+        this.queue = new BucketQueue(n * n, maxBucket);
+        this.order = new int[n * n];
+        this.tight = new int[maxBucket];
+        this.batchFill = pool != null ? new BatchFill(st, queue, pool, this, dirty, tabu) : null;
+    }
+
+    /** Empties the queue, e.g. after a fill that ran out of time. */
+    void clear() {
+        queue.clear();
+    }
+
+    /**
+     * Fills from the dirty region until no cell is eligible (returns true) or
+     * the deadline passes (returns false).  iter is the solver's iteration,
+     * for the tabu list.
+     */
+    boolean run(Random rand, long deadline, int iter) {
+        // ── Phase 1: fill the bucket queue ────────────────────────────────────
+        // The previous fill ran until no cell was eligible, so the queue is
+        // empty and only white cells in the dirty region (within 2d of a cell
+        // removed since) can be eligible now.  Insert those into the bucket of
+        // their current black count, if they are eligible.
+        // Cells go in in a random order and at a random end of their bucket,
+        // so the fill breaks ties differently on every pass.
+        salt = rand.nextInt();
+        int candidates = dirty.drain(st.cell, SolverState.WHITE, order);
+        for (int x = candidates - 1; x > 0; x--) {
+            int y = rand.nextInt(x + 1);
+            int t = order[x]; order[x] = order[y]; order[y] = t;
+        }
+        for (int x = 0; x < candidates; x++) {
+            int code = order[x];
+            if (st.canPlace(code)) {
+                queue.insert(code, counts.blacks(code), rand.nextBoolean());
+                queued++;
+            }
+        }
+
+        // ── Phase 2: greedy fill ──────────────────────────────────────────────
+        // Each step places the white cell with the highest black count, because
+        // that maximises the number of new black–black pairs created by this
+        // single placement.  The batched fill empties the queue itself, so the
+        // loop below then finds it empty.
+        if (batchFill != null) {
+            long bp = batchFill.placements, bpops = batchFill.pops;
+            boolean done = batchFill.run(rand, deadline, iter);
+            placements += batchFill.placements - bp;
+            pops += batchFill.pops - bpops;
+            if (!done) return false;
+        }
+        while (true) {
+            int top = queue.top();
+            if (top < 0) return true; // no candidates left → done filling
+            // Take a cell a random few steps into the top bucket: randomness
+            // here gives different greedy paths across iterations even when
+            // many cells tie on black count, which is common.
+            int code = queue.pick(top, rand.nextInt(32));
+            queue.remove(code);
+            pops++;
+
+            if (tabu != null && tabu.tabu(code, iter)) {
+                // Recently ruined: stays white this fill, the next one looks again.
+                dirty.mark(code / n, code % n);
+                continue;
+            }
+
+            // ── Place the cell ────────────────────────────────────────────────
+            // place() adds the cell's black count to the score (one new pair per
+            // existing black neighbour) and propagates the counts and slack
+            // state through the window — no full recount needed.
+            st.place(code);
+            placements++;
+
+            settle(code);
+
+            // Amortised time check: calling System.currentTimeMillis() on every
+            // placement would add significant overhead.  Checking every 1024
+            // placements (bitmask trick) is cheap and precise enough.
+            if ((++steps & 1023) == 0 && System.currentTimeMillis() >= deadline) return false;
+        }
+    }
+
+    /**
+     * Brings the queue up to date after code was placed: every queued cell in
+     * its window just gained a black neighbour, so it moves up a bucket, or
+     * leaves if its own limits now fail.  Blacks that the placement used up
+     * the last slack of (possibly the new cell itself) rule out every cell in
+     * their window.  Each black turns tight at most once per fill.
+     */
+    void settle(int code) {
+        int pi = code / n, pj = code % n;
+        int r0 = Math.max(0,pi-d), r1 = Math.min(n-1,pi+d);
+        int c0 = Math.max(0,pj-d), c1 = Math.min(n-1,pj+d);
+        for (int k = r0; k <= r1; k++)
+            for (int l = c0; l <= c1; l++) {
+                int kl = k * n + l;
+                int nb = queue.bucket(kl) + 1;
+                if (nb == 0) continue;
+                // st.fits() with the count taken from the bucket.  The end is
+                // a hash of the cell and the fill's salt: as random as a
+                // rand.nextBoolean() per move, at a fraction of the cost.
+                if (nb <= st.c && counts.nonRed.get(kl) - nb >= st.b) queue.move(kl, nb, (kl ^ salt) * 0x9E3779B9 < 0);
+                else queue.remove(kl);
+            }
+        int nt = st.slack.tight(pi, pj, tight);
+        for (int t = 0; t < nt; t++) {
+            int ti = tight[t] / n, tj = tight[t] % n;
+            int tr0 = Math.max(0,ti-d), tr1 = Math.min(n-1,ti+d);
+            int tc0 = Math.max(0,tj-d), tc1 = Math.min(n-1,tj+d);
+            for (int k = tr0; k <= tr1; k++)
+                for (int l = tc0; l <= tc1; l++)
+                    if (queue.contains(k * n + l)) queue.remove(k * n + l);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * One case of a puzzle or solution file.  cells holds SolverState cell states
+ * (code = i*n+j); solvers write their best grid back into it.
+ */
+final class GridCase {
+    final int caseNum;
+    final int n;
+    final int d;
+    final int b;
+    final int c;
+    final byte[] cells;
+
+    GridCase(int caseNum, int n, int d, int b, int c, byte[] cells) {
+        this.caseNum = caseNum;
+        this.n = n; // Grid size
+        this.d = d; // Neighbour range
+        this.b = b; // Min neighbouring white blocks
+        this.c = c; // Max neighbouring black blocks
+        this.cells = cells;
+    }
+
+    String getNumbers() {
+        return String.format("n:%d d:%d b:%d c:%d\n", this.n, this.d, this.b, this.c);
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Neighbour-count backend: how many black cells each cell has within Chebyshev
+ * distance d, not counting itself.
+ *
+ * Only black counts are stored.  A cell only ever flips between '.' and '#', so
+ * the number of non-'R' cells in its window never changes and the white count
+ * is derived as nonRed − blacks.
+ *
+ * Two backends are available:
+ *   - Dense: one counter per cell.  A window update touches all (2d+1)² cells,
+ *            a point query is a single array read.  Best for small d.
+ *   - Range: per-row Fenwick trees over the row's difference array.  A window
+ *            update is a range-add on each of the 2d+1 rows (O(d·log n)), a
+ *            point query is one prefix sum (O(log n)).  Best for large d, where
+ *            the dense fan-out of (2d+1)² writes per move dominates.
+ * Use {@link #forCase} to pick one by n and d.
+ */
+abstract class NeighbourCounts {
+
+    final int n;
+    final int d;
+
+    // nonRed.get(code) = number of non-'R' cells in the window of code, excluding itself.
+    final Counters nonRed;
+
+    NeighbourCounts(int n, int d, boolean offHeap) {
+        this.n = n;
+        this.d = d;
+        this.nonRed = new Counters(n * n, (2*d+1)*(2*d+1), offHeap);
+    }
+
+    /**
+     * Range-add pays off once the window is much wider than a Fenwick path:
+     * every range update costs ~4·log₂(n) tree writes per row against 2d+1
+     * plain writes per row for the dense backend.
+     *
+     * offHeap moves the per-cell counters into direct memory (see Counters).
+     */
+    static NeighbourCounts forCase(int n, int d, boolean offHeap) {
+        int logN = 32 - Integer.numberOfLeadingZeros(n);
+        if (2 * d + 1 > 8 * logN && (2*d+1)*(2*d+1) < Short.MAX_VALUE) return new Range(n, d, offHeap);
+        return new Dense(n, d, offHeap);
+    }
+
+    /** Black cells in the window of code = i*n+j, excluding the cell itself. */
+    abstract int blacks(int code);
+
+    /** White cells in the window of code, excluding the cell itself. */
+    final int whites(int code) {
+        return nonRed.get(code) - blacks(code);
+    }
+
+    /**
+     * Cell (i,j) changed colour: delta = +1 for '.'→'#', −1 for '#'→'.'.  Every
+     * other cell in its window gains delta blacks (and loses delta whites).
+     */
+    final void addWindow(int i, int j, int delta) {
+        addWindow(i, j, delta, 0, n - 1);
+    }
+
+    /**
+     * addWindow() limited to rows lo..hi.  Every row's counters are separate, so
+     * threads that own disjoint row bands can apply updates concurrently.
+     */
+    abstract void addWindow(int i, int j, int delta, int lo, int hi);
+
+    /** Writes blacks() for cells (row, c0..c1) into out[0..c1-c0]. */
+    abstract void readRow(int row, int c0, int c1, int[] out);
+
+    /** Bulk load of one row: blacks(row, l) = src[l]; see WindowCounts.count(). */
+    abstract void loadRow(int row, int[] src);
+
+    // ── Dense backend ─────────────────────────────────────────────────────────
+    static final class Dense extends NeighbourCounts {
+        private final Counters blacks;
+
+        Dense(int n, int d, boolean offHeap) {
+            super(n, d, offHeap);
+            this.blacks = new Counters(n * n, (2*d+1)*(2*d+1), offHeap);
+        }
+
+        @Override
+        int blacks(int code) {
+            return blacks.get(code);
+        }
+
+        @Override
+        void addWindow(int i, int j, int delta, int lo, int hi) {
+            int r0 = Math.max(lo,i-d), r1 = Math.min(hi,i+d);
+            int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
+            // Plain row-segment loops (no per-cell branch) so the JIT can vectorise them.
+            for (int k = r0; k <= r1; k++)
+                blacks.addRange(k * n + c0, k * n + c1 + 1, delta);
+            if (lo <= i && i <= hi) blacks.add(i * n + j, -delta); // the cell itself is not its own neighbour
+        }
+
+        @Override
+        void readRow(int row, int c0, int c1, int[] out) {
+            blacks.read(row * n + c0, c1 - c0 + 1, out);
+        }
+
+        @Override
+        void loadRow(int row, int[] src) {
+            blacks.write(row * n, n, src);
+        }
+    }
+
+    // ── Range-update / point-query backend ────────────────────────────────────
+    // short[] on-heap: a Fenwick node holds a sum of consecutive differences,
+    // i.e. blacks(row,x) − blacks(row,y), so like every count it is bounded by
+    // the window size (see Counters; this backend is only chosen while that
+    // fits a short).
+    static final class Range extends NeighbourCounts {
+        private final int stride;    // n + 1 slots per row (the Fenwick trees are 1-based)
+        private final short[] diff;  // diff[row*stride + l]: blacks(row,l) − blacks(row,l−1)
+        private final short[] tree;  // Fenwick tree over diff, 1-based inside each row
+
+        Range(int n, int d, boolean offHeap) {
+            super(n, d, offHeap);
+            this.stride = n + 1;
+            this.diff = new short[n * stride];
+            this.tree = new short[n * stride];
+        }
+
+        @Override
+        int blacks(int code) {
+            int row = code / n, col = code - row * n;
+            int base = row * stride, s = 0;
+            for (int x = col + 1; x > 0; x -= x & -x) s += tree[base + x];
+            return s;
+        }
+
+        @Override
+        void addWindow(int i, int j, int delta, int lo, int hi) {
+            int r0 = Math.max(lo,i-d), r1 = Math.min(hi,i+d);
+            int c0 = Math.max(0,j-d), c1 = Math.min(n-1,j+d);
+            for (int k = r0; k <= r1; k++) {
+                int base = k * stride;
+                add(base, c0, delta);
+                add(base, c1 + 1, -delta);
+            }
+            if (i < lo || i > hi) return;
+            // Take the cell itself back out.
+            int base = i * stride;
+            add(base, j, -delta);
+            add(base, j + 1, delta);
+        }
+
+        private void add(int base, int col, int delta) {
+            if (col >= n) return;
+            diff[base + col] += delta;
+            for (int x = col + 1; x <= n; x += x & -x) tree[base + x] += delta;
+        }
+
+        @Override
+        void readRow(int row, int c0, int c1, int[] out) {
+            int base = row * stride;
+            int s = 0;
+            for (int x = c0 + 1; x > 0; x -= x & -x) s += tree[base + x];
+            out[0] = s;
+            for (int l = c0 + 1; l <= c1; l++) {
+                s += diff[base + l];
+                out[l - c0] = s;
+            }
+        }
+
+        @Override
+        void loadRow(int row, int[] src) {
+            int base = row * stride;
+            int prev = 0;
+            for (int l = 0; l < n; l++) {
+                diff[base + l] = (short) (src[l] - prev);
+                prev = src[l];
+                tree[base + l + 1] = diff[base + l];
+            }
+            // Linear-time Fenwick build: push each node into its parent.
+            for (int x = 1; x <= n; x++) {
+                int parent = x + (x & -x);
+                if (parent <= n) tree[base + parent] += tree[base + x];
+            }
+        }
+    }
+}
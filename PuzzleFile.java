@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reader for the puzzle format, shared by puzzle and solution files:
+ *
+ *   title
+ *   case count
+ *   then per case: blank line(s), case number, "n d b c", n rows of n cells
+ *
+ * The file is memory-mapped.  Opening it only indexes where each case starts:
+ * every row holds exactly n cells, so the index jumps over the rows instead of
+ * reading them.  read(k) then decodes case k straight from the mapping into a
+ * flat byte grid, without a String or Character per row or cell.  A run that
+ * needs only some cases parses only those.  Both '\n' and "\r\n" line ends are
+ * accepted.
+ */
+final class PuzzleFile {
+
+    final String title;
+    private final MappedByteBuffer buf;
+    private final int[] start;     // offset of each case's number line
+    private int pos;               // cursor for the line helpers
+
+    private PuzzleFile(MappedByteBuffer buf) {
+        this.buf = buf;
+        this.title = line().trim();
+        int count = Integer.parseInt(line().trim());
+        int[] found = new int[count];
+        int k = 0;
+        while (k < count) {
+            skipBlankLines();
+            if (pos >= buf.limit()) break;
+            found[k++] = pos;
+            line();                                   // case number
+            int n = Integer.parseInt(line().trim().split("\\s+")[0]);
+            for (int r = 0; r < n; r++) {
+                pos += n;                             // the cells, then the line end
+                skipLine();
+            }
+        }
+        this.start = Arrays.copyOf(found, k);
+    }
+
+    /** Maps and indexes path. */
+    static PuzzleFile open(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return new PuzzleFile(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /** Number of cases in the file. */
+    int size() {
+        return start.length;
+    }
+
+    /** Case number of the k-th case, read from its header line only. */
+    synchronized int caseNum(int k) {
+        pos = start[k];
+        return Integer.parseInt(line().trim());
+    }
+
+    /** Decodes the k-th case (0-based position in the file). */
+    synchronized GridCase read(int k) {
+        pos = start[k];
+        int caseNum = Integer.parseInt(line().trim());
+        String[] parts = line().trim().split("\\s+");
+        int n = Integer.parseInt(parts[0]);
+        int d = Integer.parseInt(parts[1]);
+        int b = Integer.parseInt(parts[2]);
+        int c = Integer.parseInt(parts[3]);
+        byte[] cells = new byte[n * n];
+        for (int i = 0; i < n; i++) {
+            buf.get(pos, cells, i * n, n);           // the row's characters, then in place:
+            for (int x = i * n; x < i * n + n; x++) cells[x] = SolverState.encode((char) cells[x]);
+            pos += n;
+            skipLine();
+        }
+        return new GridCase(caseNum, n, d, b, c, cells);
+    }
+
+    /** All cases, in file order. */
+    List<GridCase> readAll() {
+        List<GridCase> all = new ArrayList<>(size());
+        for (int k = 0; k < size(); k++) all.add(read(k));
+        return all;
+    }
+
+    // ── Line helpers (header lines only; rows never become Strings) ──────────
+
+    private String line() {
+        StringBuilder sb = new StringBuilder();
+        while (pos < buf.limit()) {
+            byte ch = buf.get(pos++);
+            if (ch == '\n') break;
+            if (ch != '\r') sb.append((char) ch);
+        }
+        return sb.toString();
+    }
+
+    private void skipLine() {
+        while (pos < buf.limit() && buf.get(pos++) != '\n') {
+            // to the start of the next line
+        }
+    }
+
+    private void skipBlankLines() {
+        while (pos < buf.limit()) {
+            int p = pos;
+            while (p < buf.limit() && (buf.get(p) == ' ' || buf.get(p) == '\r' || buf.get(p) == '\t')) p++;
+            if (p < buf.limit() && buf.get(p) != '\n') return;
+            pos = p + 1;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.Random;
+
+/**
+ * Phase 4 of a BarvanjeParallel iteration: turn a random set of added blacks
+ * white, so the next fill rebuilds that part of the grid around its current
+ * surroundings.  The solver alternates three operators for diversity:
+ *   RECT    — a square block of side 1..n/2 (the original ruin);
+ *   SCATTER — a random 5–40% of all added blacks;
+ *   BAND    — a full-width or full-height strip of 1..n/4 rows or columns.
+ * Given (pre-existing '#') cells are never removed.  Every removal is marked
+ * in the dirty region and reported to the swap search, and in the tabu mode
+ * recorded in the tabu list.  The benchmarks and TileSearch call the same
+ * operators.
+ */
+final class Ruin {
+
+    static final int RECT = 0;
+    static final int SCATTER = 1;
+    static final int BAND = 2;
+    static final int TYPES = 3;
+
+    private final SolverState st;
+    private final DirtyRegion dirty;
+    private final SwapSearch swaps;  // null in TileSearch, which does no swaps
+    private final TabuList tabu;     // null outside the tabu mode
+    private final int n;
+
+    /** swaps and tabu may be null. */
+    Ruin(SolverState st, DirtyRegion dirty, SwapSearch swaps, TabuList tabu) {
+        this.st = st;
+        this.dirty = dirty;
+        this.swaps = swaps;
+        this.tabu = tabu;
+        this.n = st.n;
+    }
+
+    /**
+     * Applies operator type (RECT, SCATTER or BAND) in iteration iter, for the
+     * tabu list.  Returns how many cells it turned white.
+     */
+    int run(int type, Random rand, int iter) {
+        int ruined = 0;
+        if (type == SCATTER) {
+            double frac = 0.05 + rand.nextDouble() * 0.35;
+            for (int code = 0; code < n * n; code++)
+                if (st.removable(code) && rand.nextDouble() < frac) {
+                    st.remove(code);
+                    ruined++;
+                    if (tabu != null) tabu.ruined(code, iter);
+                    dirty.mark(code / n, code % n);
+                    if (swaps != null) swaps.changed(code / n, code % n);
+                }
+            return ruined;
+        }
+
+        int blockH, blockW;
+        if (type == BAND) {
+            if (rand.nextBoolean()) {
+                blockH = 1 + rand.nextInt(Math.max(1, n / 4));
+                blockW = n;
+            } else {
+                blockH = n;
+                blockW = 1 + rand.nextInt(Math.max(1, n / 4));
+            }
+        } else {
+            int minBlock = 1;
+            int maxBlock = Math.max(minBlock + 1, n / 2);
+            blockH = blockW = minBlock + rand.nextInt(maxBlock - minBlock + 1);
+        }
+        int startI = rand.nextInt(Math.max(1, n - blockH + 1));
+        int startJ = rand.nextInt(Math.max(1, n - blockW + 1));
+        int endI = Math.min(n, startI + blockH) - 1, endJ = Math.min(n, startJ + blockW) - 1;
+
+        for (int i = startI; i <= endI; i++)
+            for (int j = startJ; j <= endJ; j++)
+                if (st.removable(i * n + j)) {
+                    st.remove(i * n + j);
+                    ruined++;
+                    if (tabu != null) tabu.ruined(i * n + j, iter);
+                }
+        dirty.markRect(startI, endI, startJ, endJ);
+        if (swaps != null) swaps.changed(startI, endI, startJ, endJ);
+        return ruined;
+    }
+}
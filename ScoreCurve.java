@@ -0,0 +1,61 @@
+import java.util.Arrays;
+
+/**
+ * A case's best score over time: a step function, one point per improvement,
+ * time in ms since the curve was created.  Threads add to it concurrently;
+ * a score no higher than the last point is dropped, so the steps only go up.
+ */
+final class ScoreCurve {
+
+    private final long startNanos = System.nanoTime();
+    private long[] ms = new long[64];
+    private long[] scores = new long[64];
+    private int size;
+
+    synchronized void add(long score) {
+        if (size > 0 && score <= scores[size - 1]) return;
+        if (size == ms.length) {
+            ms = Arrays.copyOf(ms, 2 * size);
+            scores = Arrays.copyOf(scores, 2 * size);
+        }
+        ms[size] = (System.nanoTime() - startNanos) / 1_000_000;
+        scores[size++] = score;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long ms(int k) {
+        return ms[k];
+    }
+
+    synchronized long score(int k) {
+        return scores[k];
+    }
+
+    /** The last (best) score, or -1 if nothing was added. */
+    synchronized long last() {
+        return size == 0 ? -1 : scores[size - 1];
+    }
+
+    /** Ms until the score first reached target, or -1 if it never did. */
+    synchronized long timeTo(long target) {
+        for (int k = 0; k < size; k++)
+            if (scores[k] >= target) return ms[k];
+        return -1;
+    }
+
+    /**
+     * Mean of score / ref over [0, budgetMs]; 0 before the first point.  1 is
+     * a run that had ref from the start, so higher means it got there sooner.
+     */
+    synchronized double area(long budgetMs, long ref) {
+        double sum = 0;
+        for (int k = 0; k < size && ms[k] < budgetMs; k++) {
+            long end = k + 1 < size ? Math.min(ms[k + 1], budgetMs) : budgetMs;
+            sum += (double) scores[k] * (end - ms[k]);
+        }
+        return sum / ref / budgetMs;
+    }
+}
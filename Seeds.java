@@ -0,0 +1,34 @@
+/**
+ * Seeds derived from one run-wide seed, so a run can be repeated.
+ *
+ * -Dbarvanje.seed sets the base; without it the base comes from the clock,
+ * and BarvanjeParallel prints it so the run can be repeated anyway.  Every
+ * stream (a case's thread, a patience restart, the portfolio, the
+ * scheduler's workers) gets derive(parent, key) with its own key.  derive is
+ * one SplitMix64 step, so nearby keys give unrelated seeds.
+ *
+ * Only the random choices are repeated.  Without -Dbarvanje.sliceWork the
+ * swap and chain slices and the patience restarts go by the clock, so two
+ * runs with the same seed follow the same path only until a time check falls
+ * differently.  With it both go by work and iteration counts, and a
+ * one-thread run without checkpoints repeats exactly, restarts included, up
+ * to where its time limit cuts it off.  Migration, checkpoints, the annealing
+ * schedule and the tile rounds still go by the clock.
+ */
+final class Seeds {
+
+    static final long BASE = Long.getLong("barvanje.seed", System.nanoTime());
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private Seeds() {
+    }
+
+    /** The seed of stream key under parent. */
+    static long derive(long parent, long key) {
+        long z = parent + (key + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
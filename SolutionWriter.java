@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Background writer for a solution file in the puzzle format.
+ *
+ * Callers hand in a snapshot of a case's grid with its score and return at
+ * once; the copy is the only work on their thread.  A single writer thread
+ * encodes the snapshot into that case's section (header lines plus one byte
+ * per cell) and keeps the encoded sections by case number.  So a save
+ * re-encodes only the case that changed.  The file is then rewritten from the
+ * cached sections with one gathering FileChannel write to a temporary file,
+ * synced and atomically renamed over the old one.  Readers never see a
+ * half-written file, and a kill mid-write leaves the previous one in place.
+ *
+ * Snapshots that arrive while a write is pending are merged into it, and a
+ * snapshot that does not beat the case's last written score is dropped.  So
+ * callers can offer their current best as often as they like.
+ */
+final class SolutionWriter {
+
+    private static final byte[] CELL = { '.', '#', 'R' }; // by SolverState state
+
+    private static final class Snapshot {
+        final GridCase gc;
+        final long score;
+        final byte[] cells;
+
+        Snapshot(GridCase gc, long score, byte[] cells) {
+            this.gc = gc;
+            this.score = score;
+            this.cells = cells;
+        }
+    }
+
+    private final Path path;
+    private final String title;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "solution-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by this.
+    private final Map<Integer, Snapshot> pending = new HashMap<>();
+    private boolean queued;
+
+    // Writer thread only.
+    private final TreeMap<Integer, ByteBuffer> sections = new TreeMap<>();
+    private final Map<Integer, Long> written = new HashMap<>();
+
+    SolutionWriter(String path, String title) {
+        this.path = Paths.get(path);
+        this.title = title;
+    }
+
+    /** Queues cells (cell states) as case gc's solution unless a better one is already queued. */
+    void offer(GridCase gc, long score, byte[] cells) {
+        Snapshot s = new Snapshot(gc, score, cells.clone());
+        synchronized (this) {
+            Snapshot p = pending.get(gc.caseNum);
+            if (p != null && p.score >= score) return;
+            pending.put(gc.caseNum, s);
+            if (queued) return;
+            queued = true;
+        }
+        writer.execute(this::drain);
+    }
+
+    /** Waits until everything offered so far is on disk. */
+    void flush() throws Exception {
+        writer.submit(() -> { }).get();
+    }
+
+    private void drain() {
+        Map<Integer, Snapshot> batch;
+        synchronized (this) {
+            batch = new HashMap<>(pending);
+            pending.clear();
+            queued = false;
+        }
+        boolean changed = false;
+        for (Snapshot s : batch.values()) {
+            if (s.score <= written.getOrDefault(s.gc.caseNum, -1L)) continue;
+            sections.put(s.gc.caseNum, encode(s));
+            written.put(s.gc.caseNum, s.score);
+            changed = true;
+        }
+        if (changed) write();
+    }
+
+    /** Blank line, case number, "n d b c", then the rows. */
+    private static ByteBuffer encode(Snapshot s) {
+        GridCase g = s.gc;
+        int n = g.n;
+        byte[] head = ("\n" + g.caseNum + "\n" + n + " " + g.d + " " + g.b + " " + g.c + "\n")
+                      .getBytes(StandardCharsets.US_ASCII);
+        byte[] out = new byte[head.length + n * (n + 1)];
+        System.arraycopy(head, 0, out, 0, head.length);
+        int p = head.length;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) out[p++] = CELL[s.cells[i * n + j]];
+            out[p++] = '\n';
+        }
+        return ByteBuffer.wrap(out);
+    }
+
+    private void write() {
+        ByteBuffer[] parts = new ByteBuffer[sections.size() + 1];
+        parts[0] = ByteBuffer.wrap((title + "\n" + sections.size() + "\n").getBytes(StandardCharsets.US_ASCII));
+        int k = 1;
+        for (ByteBuffer section : sections.values()) parts[k++] = section.duplicate();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (parts[parts.length - 1].hasRemaining()) ch.write(parts);
+                ch.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("  ! writing " + path + " failed: " + e);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Counters of the solver threads, readable while a run is going on.
+ *
+ * Each algorithm() run gets a Probe.  The solver thread adds to the probe's
+ * plain per-iteration fields.  At the top of each iteration it folds them
+ * into the probe's totals with one ordered store per changed counter.  So
+ * nothing in the fill or swap loops touches shared memory, and readers see
+ * totals at most one iteration old.
+ *
+ * Two ways to read them, both attachable to a running JVM:
+ *   JMX  barvanje:type=Solver (jconsole, VisualVM); see SolverMetricsMXBean.
+ *   JFR  jcmd <pid> JFR.start.  barvanje.SolverStats is every thread's totals
+ *        once a second.  barvanje.Iteration is one event per iteration with
+ *        its ruin, fill and swap figures and phase times.  It is off by
+ *        default, being thousands a second on the small cases; enable it in
+ *        the recording's settings.
+ */
+final class SolverMetrics implements SolverMetricsMXBean {
+
+    // ── Counters ──────────────────────────────────────────────────────────────
+
+    static final int ITERATIONS = 0;
+    static final int FILLS = 1;
+    static final int PLACEMENTS = 2;
+    static final int POPS = 3;
+    static final int QUEUED = 4;          // cells queued at the start of each fill
+    static final int RECT_RUINS = 5;      // + ruin type: rectangle, scatter, band
+    static final int SCATTER_RUINS = 6;
+    static final int BAND_RUINS = 7;
+    static final int RUINED = 8;          // cells turned white by ruins
+    static final int SWAP_ATTEMPTS = 9;
+    static final int SWAP_ACCEPTS = 10;
+    static final int CHAIN_ATTEMPTS = 11;
+    static final int CHAIN_ACCEPTS = 12;
+    static final int RESTARTS = 13;
+    static final int ROLLBACKS = 14;
+    static final int MIGRATIONS = 15;
+    static final int FILL_NS = 16;        // phase times, in the order of PHASES
+    static final int SWAP_NS = 17;
+    static final int CHAIN_NS = 18;
+    static final int ANNEAL_NS = 19;
+    static final int RESET_NS = 20;
+    static final int RUIN_NS = 21;
+    private static final int COUNTERS = 22;
+
+    private static final String[] NAMES = {
+        "iterations", "fills", "placements", "pops", "queued",
+        "rectRuins", "scatterRuins", "bandRuins", "ruinedCells",
+        "swapAttempts", "swapAccepts", "chainAttempts", "chainAccepts",
+        "restarts", "rollbacks", "migrations",
+        "fillNanos", "swapNanos", "chainNanos", "annealNanos", "resetNanos", "ruinNanos",
+    };
+    private static final String[] PHASES = { "fill", "swap", "chain", "anneal", "reset", "ruin" };
+    private static final String[] RUIN_TYPES = { "rectangle", "scatter", "band" };
+
+    private static final SolverMetrics INSTANCE = new SolverMetrics();
+    // Checked per iteration, so no IterationEvent is made unless a recording wants it.
+    private static final EventType ITERATION_EVENT = EventType.getEventType(IterationEvent.class);
+    private static boolean registered;  // guarded by SolverMetrics.class
+
+    private final List<Probe> live = new CopyOnWriteArrayList<>();
+    private final long[] retired = new long[COUNTERS];  // totals of finished probes; guarded by this
+    private long rateNanos = System.nanoTime();         // guarded by this
+    private long ratePlacements;
+    private double rate;
+
+    private SolverMetrics() {
+    }
+
+    /**
+     * Publishes the counters through JMX and JFR.  Starting the platform MBean
+     * server takes a few hundred ms, so main() does this before any case's
+     * clock starts.  Probes count either way.
+     */
+    static synchronized void register() {
+        if (registered) return;
+        registered = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(INSTANCE, new ObjectName("barvanje:type=Solver"));
+        } catch (Exception e) {
+            System.out.println("  ! solver metrics not registered with JMX: " + e);
+        }
+        FlightRecorder.addPeriodicEvent(StatsEvent.class, SolverMetrics::emitStats);
+    }
+
+    /** A probe for one algorithm() run; close() it when the run ends. */
+    static Probe probe(int caseNum, int threadId) {
+        Probe p = new Probe(caseNum, threadId);
+        INSTANCE.live.add(p);
+        return p;
+    }
+
+    // ── Per-run probe ─────────────────────────────────────────────────────────
+
+    static final class Probe {
+        final int caseNum;
+        final int threadId;
+        private final AtomicLongArray total = new AtomicLongArray(COUNTERS);
+        private final long[] iter = new long[COUNTERS];  // this iteration; solver thread only
+        private volatile long best;
+        private IterationEvent event;
+        private int ruinType = -1;
+        private long ruinCells;
+
+        private Probe(int caseNum, int threadId) {
+            this.caseNum = caseNum;
+            this.threadId = threadId;
+        }
+
+        void add(int counter, long delta) {
+            iter[counter] += delta;
+        }
+
+        /** Adds the time since `since` to a phase counter; returns now. */
+        long lap(int phase, long since) {
+            long now = System.nanoTime();
+            iter[phase] += now - since;
+            return now;
+        }
+
+        void ruin(int type, long cells) {
+            ruinType = type;
+            ruinCells = cells;
+            iter[RECT_RUINS + type]++;
+            iter[RUINED] += cells;
+        }
+
+        /** Ends the previous iteration (if any) and starts the next one. */
+        void iteration(long bestScore) {
+            flush();
+            best = bestScore;
+            iter[ITERATIONS]++;
+            if (ITERATION_EVENT.isEnabled()) {
+                event = new IterationEvent();
+                event.begin();
+            }
+        }
+
+        /** Ends the last iteration and moves the totals to the retired ones. */
+        void close(long bestScore) {
+            flush();
+            best = bestScore;
+            synchronized (INSTANCE) {
+                INSTANCE.live.remove(this);
+                for (int k = 0; k < COUNTERS; k++) INSTANCE.retired[k] += total.get(k);
+            }
+        }
+
+        private void flush() {
+            IterationEvent e = event;
+            if (e != null && e.shouldCommit()) {
+                e.caseNum = caseNum;
+                e.threadId = threadId;
+                e.iteration = total.get(ITERATIONS) + iter[ITERATIONS];
+                e.best = best;
+                e.ruinType = ruinType < 0 ? "" : RUIN_TYPES[ruinType];
+                e.ruinCells = ruinCells;
+                e.queued = iter[QUEUED];
+                e.placements = iter[PLACEMENTS];
+                e.swapAttempts = iter[SWAP_ATTEMPTS];
+                e.swapAccepts = iter[SWAP_ACCEPTS];
+                e.fill = iter[FILL_NS];
+                e.swap = iter[SWAP_NS];
+                e.chain = iter[CHAIN_NS];
+                e.ruin = iter[RUIN_NS];
+                e.commit();
+            }
+            event = null;
+            ruinType = -1;
+            ruinCells = 0;
+            for (int k = 0; k < COUNTERS; k++) {
+                if (iter[k] == 0) continue;
+                total.lazySet(k, total.get(k) + iter[k]);
+                iter[k] = 0;
+            }
+        }
+    }
+
+    // ── JMX ───────────────────────────────────────────────────────────────────
+
+    private long[] totals() {
+        long[] t = new long[COUNTERS];
+        synchronized (this) {
+            System.arraycopy(retired, 0, t, 0, COUNTERS);
+            for (Probe p : live)
+                for (int k = 0; k < COUNTERS; k++) t[k] += p.total.get(k);
+        }
+        return t;
+    }
+
+    private static double ratio(long a, long b) {
+        return b == 0 ? 0 : (double) a / b;
+    }
+
+    @Override
+    public int getActiveThreads() {
+        return live.size();
+    }
+
+    @Override
+    public long getIterations() {
+        return totals()[ITERATIONS];
+    }
+
+    @Override
+    public long getPlacements() {
+        return totals()[PLACEMENTS];
+    }
+
+    @Override
+    public synchronized double getPlacementsPerSecond() {
+        long now = System.nanoTime();
+        if (now - rateNanos >= 1_000_000_000L) {
+            long placements = totals()[PLACEMENTS];
+            rate = (placements - ratePlacements) * 1e9 / (now - rateNanos);
+            rateNanos = now;
+            ratePlacements = placements;
+        }
+        return rate;
+    }
+
+    @Override
+    public double getMeanQueueOccupancy() {
+        long[] t = totals();
+        return ratio(t[QUEUED], t[FILLS]);
+    }
+
+    @Override
+    public double getMeanRuinSize() {
+        long[] t = totals();
+        return ratio(t[RUINED], t[RECT_RUINS] + t[SCATTER_RUINS] + t[BAND_RUINS]);
+    }
+
+    @Override
+    public long getRestarts() {
+        return totals()[RESTARTS];
+    }
+
+    @Override
+    public long getSwapAttempts() {
+        return totals()[SWAP_ATTEMPTS];
+    }
+
+    @Override
+    public long getSwapAcceptances() {
+        return totals()[SWAP_ACCEPTS];
+    }
+
+    @Override
+    public Map<String, Long> getTotals() {
+        long[] t = totals();
+        Map<String, Long> m = new LinkedHashMap<>();
+        for (int k = 0; k < COUNTERS; k++) m.put(NAMES[k], t[k]);
+        return m;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseSeconds() {
+        long[] t = totals();
+        Map<String, Double> m = new LinkedHashMap<>();
+        for (int k = 0; k < PHASES.length; k++) m.put(PHASES[k], t[FILL_NS + k] / 1e9);
+        return m;
+    }
+
+    @Override
+    public List<String> getThreads() {
+        List<String> lines = new ArrayList<>();
+        for (Probe p : live)
+            lines.add(String.format("case %d t%d: best %d, %d iterations, %d placements, "
+                                    + "swaps %d/%d, %d restarts",
+                p.caseNum, p.threadId, p.best, p.total.get(ITERATIONS), p.total.get(PLACEMENTS),
+                p.total.get(SWAP_ACCEPTS), p.total.get(SWAP_ATTEMPTS), p.total.get(RESTARTS)));
+        return lines;
+    }
+
+    // ── JFR ───────────────────────────────────────────────────────────────────
+
+    @Name("barvanje.Iteration")
+    @Label("Solver Iteration")
+    @Category("Barvanje")
+    @Description("One ruin-and-rebuild iteration of a solver thread")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class IterationEvent extends Event {
+        @Label("Case") int caseNum;
+        @Label("Thread") int threadId;
+        @Label("Iteration") long iteration;
+        @Label("Best Score") long best;
+        @Label("Ruin Type") String ruinType;
+        @Label("Ruined Cells") long ruinCells;
+        @Label("Queued Cells") long queued;
+        @Label("Placements") long placements;
+        @Label("Swap Attempts") long swapAttempts;
+        @Label("Swap Accepts") long swapAccepts;
+        @Label("Fill Time") @Timespan(Timespan.NANOSECONDS) long fill;
+        @Label("Swap Time") @Timespan(Timespan.NANOSECONDS) long swap;
+        @Label("Chain Time") @Timespan(Timespan.NANOSECONDS) long chain;
+        @Label("Ruin Time") @Timespan(Timespan.NANOSECONDS) long ruin;
+    }
+
+    @Name("barvanje.SolverStats")
+    @Label("Solver Stats")
+    @Category("Barvanje")
+    @Description("Totals of one solver thread's current run")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class StatsEvent extends Event {
+        @Label("Case") int caseNum;
+        @Label("Thread") int threadId;
+        @Label("Best Score") long best;
+        @Label("Iterations") long iterations;
+        @Label("Placements") long placements;
+        @Label("Pops") long pops;
+        @Label("Queued Cells") long queued;
+        @Label("Ruins") long ruins;
+        @Label("Ruined Cells") long ruinCells;
+        @Label("Swap Attempts") long swapAttempts;
+        @Label("Swap Accepts") long swapAccepts;
+        @Label("Chain Attempts") long chainAttempts;
+        @Label("Chain Accepts") long chainAccepts;
+        @Label("Restarts") long restarts;
+        @Label("Fill Time") @Timespan(Timespan.NANOSECONDS) long fill;
+        @Label("Swap Time") @Timespan(Timespan.NANOSECONDS) long swap;
+        @Label("Chain Time") @Timespan(Timespan.NANOSECONDS) long chain;
+        @Label("Anneal Time") @Timespan(Timespan.NANOSECONDS) long anneal;
+        @Label("Reset Time") @Timespan(Timespan.NANOSECONDS) long reset;
+        @Label("Ruin Time") @Timespan(Timespan.NANOSECONDS) long ruin;
+    }
+
+    private static void emitStats() {
+        for (Probe p : INSTANCE.live) {
+            AtomicLongArray t = p.total;
+            StatsEvent e = new StatsEvent();
+            e.caseNum = p.caseNum;
+            e.threadId = p.threadId;
+            e.best = p.best;
+            e.iterations = t.get(ITERATIONS);
+            e.placements = t.get(PLACEMENTS);
+            e.pops = t.get(POPS);
+            e.queued = t.get(QUEUED);
+            e.ruins = t.get(RECT_RUINS) + t.get(SCATTER_RUINS) + t.get(BAND_RUINS);
+            e.ruinCells = t.get(RUINED);
+            e.swapAttempts = t.get(SWAP_ATTEMPTS);
+            e.swapAccepts = t.get(SWAP_ACCEPTS);
+            e.chainAttempts = t.get(CHAIN_ATTEMPTS);
+            e.chainAccepts = t.get(CHAIN_ACCEPTS);
+            e.restarts = t.get(RESTARTS);
+            e.fill = t.get(FILL_NS);
+            e.swap = t.get(SWAP_NS);
+            e.chain = t.get(CHAIN_NS);
+            e.anneal = t.get(ANNEAL_NS);
+            e.reset = t.get(RESET_NS);
+            e.ruin = t.get(RUIN_NS);
+            e.commit();
+        }
+    }
+}
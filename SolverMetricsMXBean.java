@@ -0,0 +1,42 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live solver counters under the JMX name barvanje:type=Solver (see
+ * SolverMetrics).  Totals cover every algorithm() run since the JVM started;
+ * the thread list covers the runs in progress.
+ */
+public interface SolverMetricsMXBean {
+
+    /** Solver threads inside algorithm() right now. */
+    int getActiveThreads();
+
+    long getIterations();
+
+    long getPlacements();
+
+    /** Placements per second since the previous read (at least a second back). */
+    double getPlacementsPerSecond();
+
+    /** Cells in the queue at the start of a fill, per fill. */
+    double getMeanQueueOccupancy();
+
+    /** Cells a ruin turned white, per ruin. */
+    double getMeanRuinSize();
+
+    long getRestarts();
+
+    /** Blacks examined by the swap search. */
+    long getSwapAttempts();
+
+    long getSwapAcceptances();
+
+    /** Every counter by name. */
+    Map<String, Long> getTotals();
+
+    /** Seconds spent per phase (fill, swap, chain, anneal, reset, ruin). */
+    Map<String, Double> getPhaseSeconds();
+
+    /** One line per active thread: case, thread, best and its own counters. */
+    List<String> getThreads();
+}
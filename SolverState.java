@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Complete incremental state of one solver thread, stored in flat primitive
+ * arrays indexed by code = i*n+j.
+ *
+ * Compared to char[][]/int[][]/boolean[][] this removes one object per row and
+ * the pointer chase in every inner window loop, and it keeps each array in the
+ * narrowest type that fits:
+ *   - cell states are bytes (WHITE / BLACK / RED),
+ *   - neighbour counts are shorts whenever (2d+1)² < 32768
+ *     (every case in Barvanje.txt), see Counters,
+ *   - with offHeap the counters live in direct memory instead of the heap.
+ *
+ * All moves go through place()/remove(), which keep the neighbour counts, the
+ * constraint index, the score and the grid hash in sync incrementally.
+ * load() rebuilds everything from a whole grid in O(n²) through sliding
+ * window sums (see WindowCounts).
+ *
+ * Whether a white cell may turn black without invalidating an existing black
+ * neighbour is answered by the ConstraintIndex (minimum slack over the window),
+ * so a move no longer rescans its window for neighbours hitting a limit.
+ */
+final class SolverState {
+
+    static final byte WHITE = 0;
+    static final byte BLACK = 1;
+    static final byte RED = 2;
+
+    final int n;
+    final int d;
+    final int b; // min white neighbours of a black cell
+    final int c; // max black neighbours of a black cell
+
+    final byte[] orig;  // input grid (read-only); its '#' cells are never removed
+    final byte[] cell;  // working grid
+    final NeighbourCounts counts;
+    final ConstraintIndex slack;
+
+    // Number of black–black pairs within distance d, kept in sync by place()/remove().
+    long score;
+
+    // Zobrist hash of the black cells: the XOR of zobrist(code) over every black,
+    // updated by each flip, so two visits to the same grid hash the same.
+    long hash;
+
+    // Snapshot committed by save() and restored by rollback().
+    final byte[] best;
+
+    // Undo journal: every cell flipped since the last save()/rollback(), so both
+    // touch only those cells instead of all n².  Once it would exceed its
+    // capacity, or after a load(), the journal is invalid and both fall back to a
+    // full copy / rebuild.
+    private final int[] journal;
+    private int journalSize;
+    private boolean journalValid;
+
+    private final WindowCounts windowCounts;
+    private final int[] rowBuf;
+
+    SolverState(int n, int d, int b, int c, byte[] orig, boolean offHeap) {
+        this.n = n;
+        this.d = d;
+        this.b = b;
+        this.c = c;
+        this.orig = orig;
+        this.cell = new byte[n * n];
+        this.counts = NeighbourCounts.forCase(n, d, offHeap);
+        this.slack = new ConstraintIndex(n, d);
+        this.windowCounts = new WindowCounts(n, d);
+        this.rowBuf = new int[n];
+        this.best = orig.clone();
+        // Undoing a flip costs about one window update, a rebuild about n² work.
+        this.journal = new int[Math.max(64, n * n / (2*d+1))];
+        load(orig);
+        journalValid = true;
+    }
+
+    /**
+     * Zobrist key of a cell: the SplitMix64 finaliser of its code, which gives
+     * the same independent-looking 64-bit keys as a random table without the
+     * 8n² bytes.
+     */
+    static long zobrist(int code) {
+        long z = (code + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    static byte encode(char ch) {
+        return ch == '#' ? BLACK : ch == 'R' ? RED : WHITE;
+    }
+
+    static char decode(byte state) {
+        return state == BLACK ? '#' : state == RED ? 'R' : '.';
+    }
+
+    /**
+     * True if grid (e.g. read back from disk) solves the input orig: the same
+     * red cells, every given black still black, and all limits held.  Silent:
+     * a rejected grid is just not used.
+     */
+    static boolean solves(byte[] grid, byte[] orig, int n, int d, int b, int c) {
+        return grid.length == n * n && Validator.check(new GridCase(0, n, d, b, c, orig), grid).valid();
+    }
+
+    /**
+     * Replaces the working grid with src and rebuilds counts, constraint index
+     * and score from scratch (O(n²)).
+     */
+    void load(byte[] src) {
+        journalValid = false;
+        System.arraycopy(src, 0, cell, 0, n * n);
+        windowCounts.count(cell, counts);
+        slack.load(cell, counts, b, c, rowBuf);
+        // Each black cell contributes its black count, but every pair is counted
+        // twice (once from each end), so halve at the end.
+        long s = 0, h = 0;
+        for (int code = 0; code < n * n; code++)
+            if (cell[code] == BLACK) {
+                s += counts.blacks(code);
+                h ^= zobrist(code);
+            }
+        score = s / 2;
+        hash = h;
+    }
+
+    /**
+     * True if the white cell code can turn black: it would itself have at least
+     * b white and at most c black neighbours, and every black cell in its window
+     * has slack for one more black neighbour.
+     */
+    boolean canPlace(int code) {
+        if (!fits(code)) return false;
+        int i = code / n;
+        return slack.clear(i, code - i * n);
+    }
+
+    /** True if code, as a black cell, would have ≥ b white and ≤ c black neighbours. */
+    boolean fits(int code) {
+        int nb = counts.blacks(code);
+        return nb <= c && counts.nonRed.get(code) - nb >= b;
+    }
+
+    /** Turns the white cell code black.  The caller checks canPlace() first. */
+    void place(int code) {
+        int i = code / n, j = code - i * n;
+        int nb = counts.blacks(code);
+        // One new pair with every existing black neighbour.
+        score += nb;
+        hash ^= zobrist(code);
+        cell[code] = BLACK;
+        record(code);
+
+        // Every other cell in the window gains a black neighbour and loses a white
+        // one, so every black there loses one unit of slack.  The cell's own
+        // counts don't change; it just starts being tracked.
+        counts.addWindow(i, j, 1);
+        slack.addWindow(i, j, -1);
+        slack.set(i, j, ConstraintIndex.slack(nb, counts.nonRed.get(code) - nb, b, c));
+    }
+
+    /**
+     * Same as place() on each of codes[0..k), which must all be eligible and
+     * pairwise more than 2d apart, so that no placement changes another's
+     * count, slack or eligibility.  Score, hash and journal are updated in
+     * order on this thread.  The window updates are split into row bands, one
+     * task per band on pool, so every row's counters and slack tree have a
+     * single writer.  The result does not depend on scheduling: adds commute.
+     */
+    void placeBatch(int[] codes, int k, ForkJoinPool pool) {
+        int[] own = new int[k];
+        for (int x = 0; x < k; x++) {
+            int code = codes[x];
+            int nb = counts.blacks(code);
+            score += nb;
+            hash ^= zobrist(code);
+            cell[code] = BLACK;
+            record(code);
+            own[x] = ConstraintIndex.slack(nb, counts.nonRed.get(code) - nb, b, c);
+        }
+        int bands = Math.min(n, pool.getParallelism());
+        List<Callable<Void>> tasks = new ArrayList<>(bands);
+        for (int t = 0; t < bands; t++) {
+            int lo = t * n / bands, hi = (t + 1) * n / bands - 1;
+            tasks.add(() -> {
+                for (int x = 0; x < k; x++) {
+                    int i = codes[x] / n, j = codes[x] - i * n;
+                    if (i + d < lo || i - d > hi) continue;
+                    counts.addWindow(i, j, 1, lo, hi);
+                    slack.addWindow(i, j, -1, lo, hi);
+                    if (lo <= i && i <= hi) slack.set(i, j, own[x]);
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) f.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Turns the black cell code white. */
+    void remove(int code) {
+        int i = code / n, j = code - i * n;
+        // Every existing black neighbour loses its pair with this cell.
+        score -= counts.blacks(code);
+        hash ^= zobrist(code);
+        cell[code] = WHITE;
+        record(code);
+
+        counts.addWindow(i, j, -1);
+        slack.addWindow(i, j, 1);
+        slack.set(i, j, ConstraintIndex.FREE);
+    }
+
+    /**
+     * Makes the working grid valid by turning added blacks white: each black
+     * that breaks a limit is removed itself, or if it is a pre-existing '#',
+     * added blacks in its window are removed until it holds.  A removal only
+     * ever helps the other blacks, so one pass suffices.  Returns how many cells
+     * were removed.  For grids from outside the solver, e.g. a recombination.
+     */
+    int repair() {
+        int removed = 0;
+        for (int code = 0; code < n * n; code++) {
+            if (cell[code] != BLACK || fits(code)) continue;
+            if (removable(code)) {
+                remove(code);
+                removed++;
+                continue;
+            }
+            int i = code / n, j = code - i * n;
+            for (int k = Math.max(0,i-d); k <= Math.min(n-1,i+d) && !fits(code); k++)
+                for (int l = Math.max(0,j-d); l <= Math.min(n-1,j+d) && !fits(code); l++)
+                    if (removable(k * n + l)) {
+                        remove(k * n + l);
+                        removed++;
+                    }
+        }
+        return removed;
+    }
+
+    /** True if code is a black cell added by the solver (not a pre-existing '#'). */
+    boolean removable(int code) {
+        return cell[code] == BLACK && orig[code] != BLACK;
+    }
+
+    // ── Best snapshot and undo journal ───────────────────────────────────────
+
+    /** Commits the working grid as the new best: O(flips since the last save). */
+    void save() {
+        if (journalValid) {
+            for (int k = 0; k < journalSize; k++) best[journal[k]] = cell[journal[k]];
+        } else {
+            System.arraycopy(cell, 0, best, 0, n * n);
+        }
+        journalSize = 0;
+        journalValid = true;
+    }
+
+    /**
+     * Restores the best grid by flipping back only the journaled cells that
+     * still differ from it, through remove()/place() so counts, slack and score
+     * stay exact.  Rebuilds with load() when the journal is invalid.
+     */
+    void rollback() {
+        if (journalValid) {
+            journalValid = false; // the undo flips themselves are not journaled
+            for (int k = journalSize - 1; k >= 0; k--) {
+                int code = journal[k];
+                if (cell[code] == best[code]) continue;
+                if (best[code] == BLACK) place(code);
+                else remove(code);
+            }
+        } else {
+            load(best);
+        }
+        journalSize = 0;
+        journalValid = true;
+    }
+
+    /** Journal position to pass to unwind(), or -1 when the journal is invalid. */
+    int journalMark() {
+        return journalValid ? journalSize : -1;
+    }
+
+    /**
+     * Drops everything journaled since journalMark() returned mark.  Only for a
+     * caller that has just flipped all of those cells back, so the grid is
+     * again what it was at the mark: a rejected trial then leaves no entries.
+     */
+    void unwind(int mark) {
+        if (mark < 0) return;
+        journalSize = mark;
+        journalValid = true;
+    }
+
+    private void record(int code) {
+        if (!journalValid) return;
+        // Flipping the last journaled cell straight back (a rejected swap) needs
+        // no second entry: save() and rollback() compare against best anyway.
+        if (journalSize > 0 && journal[journalSize - 1] == code) return;
+        if (journalSize == journal.length) {
+            journalValid = false;
+            return;
+        }
+        journal[journalSize++] = code;
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.Arrays;
+
+/**
+ * Swap local search with don't-look bits.  A move takes out one added black
+ * cell and puts in the best white cell within 2d that is eligible without it,
+ * when that gains pairs.
+ *
+ * The old sweep examined every black on every pass.  That is why it was gated
+ * off once n²·(4d+1)² ≥ 5·10⁸ (cases 9–12).  Here a black is examined only
+ * while its look bit is set, i.e. when something within 4d has changed since
+ * it was last found to have no improving swap.  Its loss depends on cells
+ * within d.  Whether a white within 2d of it is eligible depends on cells
+ * within 2d of that white.  An accepted swap sets the bits around both of its
+ * cells, and the solver reports what ruin changed.
+ *
+ * For an examined black the candidate list holds the whites within 2d whose
+ * black count beats its loss, sorted by count, so the first feasible one is
+ * the best swap.  Feasibility comes from the maintained constraint index, not
+ * a rescan.  canPlace() is a (2d+1)-row range query per candidate.  On case 12
+ * there are thousands of candidates per black, so for long lists the slack
+ * rows around the black are read once instead, and a 2D sliding-window
+ * minimum gives every candidate's window minimum in O((6d+1)²) total.
+ */
+final class SwapSearch {
+
+    private final SolverState st;
+    private final int n;
+    private final int d;
+    private final int logN;
+    private final DirtyRegion refill; // the fill's dirty region: swapped-out cells go here
+    private final DirtyRegion look;   // changes whose surroundings aren't queued yet
+    private final DirtyRegion woken;  // cells of accepted swaps, same but within 4d
+    private final int[] work;         // FIFO ring of blacks whose look bit is set
+    private final boolean[] queued;   // look bits
+    private int head, size;
+    private final int[] drained;
+    private final int[] rowBuf;
+    private final long[] cand;        // candidate whites as count << 32 | code
+    private final int[] minSlack;     // (6d+1)² scratch around the examined black
+    private final int[] line, lineOut, deque;
+    long attempts, accepts;           // blacks examined and swaps made, for SolverMetrics
+
+    SwapSearch(SolverState st, DirtyRegion refill) {
+        this.st = st;
+        this.n = st.n;
+        this.d = st.d;
+        this.refill = refill;
+        // A ruin turns cells white and the next fill places blacks up to 2d
+        // further out; blacks up to 4d beyond those are affected.
+        this.look = new DirtyRegion(n, 6 * d);
+        this.woken = new DirtyRegion(n, 4 * d);
+        woken.clear();
+        this.work = new int[n * n];
+        this.queued = new boolean[n * n];
+        this.drained = new int[n * n];
+        this.rowBuf = new int[n];
+        this.logN = 32 - Integer.numberOfLeadingZeros(n);
+        int side4 = Math.min(n, 4*d + 1);
+        this.cand = new long[side4 * side4];
+        int side = Math.min(n, 6*d + 1);
+        this.minSlack = new int[side * side];
+        this.line = new int[side];
+        this.lineOut = new int[side];
+        this.deque = new int[side];
+    }
+
+    /** Sets every look bit, e.g. after a load() or rollback(). */
+    void lookAll() {
+        look.all();
+    }
+
+    /** Clears every look bit: only what is reported from now on gets examined. */
+    void lookNone() {
+        look.clear();
+        woken.clear();
+        for (; size > 0; size--) {
+            queued[work[head]] = false;
+            head = head + 1 == work.length ? 0 : head + 1;
+        }
+    }
+
+    /** Cells in rows i0..i1, columns j0..j1 were ruined (turned white). */
+    void changed(int i0, int i1, int j0, int j1) {
+        look.markRect(i0, i1, j0, j1);
+    }
+
+    /** Cell (i,j) was ruined (turned white). */
+    void changed(int i, int j) {
+        look.mark(i, j);
+    }
+
+    /**
+     * Examines blacks until no look bit is left (returns true) or the deadline
+     * passes (returns false; the remaining bits are kept for the next call).
+     */
+    boolean run(long deadline) {
+        return run(deadline, Long.MAX_VALUE);
+    }
+
+    /** Same, but also stops after maxExamined blacks, e.g. for a fixed amount of work. */
+    boolean run(long deadline, long maxExamined) {
+        int m = look.drain(st.cell, SolverState.BLACK, drained);
+        for (int x = 0; x < m; x++) enqueue(drained[x]);
+        long examined = 0;
+        while (true) {
+            if (size == 0) {
+                // Wake-ups are collected as spans, so overlapping ones are
+                // scanned once; pick them up when the queue runs dry.
+                m = woken.drain(st.cell, SolverState.BLACK, drained);
+                for (int x = 0; x < m; x++) enqueue(drained[x]);
+                if (size == 0) break;
+            }
+            if (examined == maxExamined) return false;
+            if ((++examined & 255) == 0 && System.currentTimeMillis() >= deadline) return false;
+            int s = work[head];
+            head = head + 1 == work.length ? 0 : head + 1;
+            size--;
+            queued[s] = false;
+            if (st.removable(s)) {
+                attempts++;
+                examine(s);
+            }
+        }
+        return true;
+    }
+
+    private void examine(int s) {
+        NeighbourCounts counts = st.counts;
+        byte[] cell = st.cell;
+        int si = s / n, sj = s - si * n;
+        int loss = counts.blacks(s);
+        // Take s out: counts and slack then describe the grid without it.
+        st.remove(s);
+
+        // Candidate list: whites within 2d whose count beats the loss, as
+        // count << 32 | code so that sorting orders them by count.
+        int er0 = Math.max(0,si-2*d), er1 = Math.min(n-1,si+2*d);
+        int ec0 = Math.max(0,sj-2*d), ec1 = Math.min(n-1,sj+2*d);
+        int m = 0;
+        for (int wi = er0; wi <= er1; wi++) {
+            counts.readRow(wi, ec0, ec1, rowBuf);
+            for (int wj = ec0; wj <= ec1; wj++) {
+                int w = wi * n + wj;
+                int wb = rowBuf[wj - ec0];
+                if (wb > loss && cell[w] == SolverState.WHITE) cand[m++] = (long) wb << 32 | w;
+            }
+        }
+        Arrays.sort(cand, 0, m);
+
+        // Short lists: one window query per candidate, best count first.  Long
+        // lists: every candidate's window minimum from one sliding-window pass.
+        int R0 = Math.max(0,si-3*d), R1 = Math.min(n-1,si+3*d);
+        int C0 = Math.max(0,sj-3*d), C1 = Math.min(n-1,sj+3*d);
+        int H = R1 - R0 + 1, W = C1 - C0 + 1;
+        boolean bulk = (long) m * (2*d+1) * logN > 4L * H * W;
+        if (bulk) windowMinima(R0, H, C0, W, ec0 - C0, ec1 - C0);
+
+        int best = -1;
+        for (int k = m - 1; k >= 0 && best < 0; k--) {
+            int w = (int) cand[k];
+            boolean ok = bulk ? minSlack[(w / n - R0) * W + (w % n - C0)] >= 1 && st.fits(w)
+                              : st.canPlace(w);
+            if (ok) best = w;
+        }
+
+        if (best < 0) {
+            st.place(s); // no improving swap: s keeps its look bit cleared
+            return;
+        }
+        st.place(best);
+        accepts++;
+        // s is white now: the next fill may place around it, and what it places
+        // changes the swaps of blacks further out (hence the wider look region).
+        refill.mark(si, sj);
+        look.mark(si, sj);
+        woken.mark(si, sj);
+        woken.mark(best / n, best % n);
+    }
+
+    /**
+     * minSlack[r*W + x] = min slack over the window of (R0+r, C0+x), for the
+     * columns x0..x1: a row pass and then a column pass of sliding-window minima.
+     */
+    private void windowMinima(int R0, int H, int C0, int W, int x0, int x1) {
+        NeighbourCounts counts = st.counts;
+        for (int r = 0; r < H; r++) {
+            // Slack straight from the counts: a plain row read, no tree descent.
+            int base = (R0 + r) * n + C0;
+            counts.readRow(R0 + r, C0, C0 + W - 1, line);
+            for (int x = 0; x < W; x++)
+                line[x] = st.cell[base + x] != SolverState.BLACK ? ConstraintIndex.FREE
+                        : ConstraintIndex.slack(line[x], counts.nonRed.get(base + x) - line[x], st.b, st.c);
+            slideMin(line, W, lineOut);
+            System.arraycopy(lineOut, 0, minSlack, r * W, W);
+        }
+        for (int x = x0; x <= x1; x++) {
+            for (int r = 0; r < H; r++) line[r] = minSlack[r * W + x];
+            slideMin(line, H, lineOut);
+            for (int r = 0; r < H; r++) minSlack[r * W + x] = lineOut[r];
+        }
+    }
+
+    /** out[x] = min of in[x-d .. x+d] clipped to [0, len), via a monotone deque. */
+    private void slideMin(int[] in, int len, int[] out) {
+        int qh = 0, qt = 0, next = 0;
+        for (int x = 0; x < len; x++) {
+            for (int end = Math.min(len - 1, x + d); next <= end; next++) {
+                while (qt > qh && in[deque[qt - 1]] >= in[next]) qt--;
+                deque[qt++] = next;
+            }
+            while (deque[qh] < x - d) qh++;
+            out[x] = in[deque[qh]];
+        }
+    }
+
+    private void enqueue(int code) {
+        if (queued[code] || !st.removable(code)) return;
+        queued[code] = true;
+        int tail = head + size;
+        work[tail >= work.length ? tail - work.length : tail] = code;
+        size++;
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.Arrays;
+
+/**
+ * Memory for the tabu mode of BarvanjeParallel: which local optima were seen
+ * recently, and which cells were flipped recently.
+ *
+ * Optima are remembered by their Zobrist hash (SolverState.hash) in an
+ * open-addressing set.  It is cleared once it is half full, so it holds the
+ * last few thousand optima and never needs a probe longer than a few slots.
+ * A 64-bit collision between two different grids is negligible at that size.
+ *
+ * A cell the ruin turned white stays tabu for the fill until the iteration
+ * tabuUntil[code], so the rebuild has to use other cells there.  The tenure is
+ * reactive: it doubles each time an iteration ends on an optimum that was
+ * already seen, up to MAX_TENURE, and drops back to 1 on a new one.
+ */
+final class TabuList {
+
+    private static final int MAX_TENURE = 16;
+
+    private final int[] tabuUntil;
+    private final long[] seen;   // hash set of optima; 0 marks an empty slot
+    private final int mask;
+    private int seenSize;
+    private int tenure = 1;
+
+    TabuList(int cells, int capacity) {
+        this.tabuUntil = new int[cells];
+        int cap = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+        this.seen = new long[cap];
+        this.mask = cap - 1;
+    }
+
+    /**
+     * Records the optimum with this hash.  Returns true if it was seen before,
+     * which lengthens the tenure; otherwise it resets the tenure.
+     */
+    boolean visit(long hash) {
+        if (hash == 0) hash = 1; // 0 marks empty slots
+        int p = (int) (hash ^ (hash >>> 32)) & mask;
+        while (seen[p] != 0) {
+            if (seen[p] == hash) {
+                tenure = Math.min(MAX_TENURE, tenure * 2);
+                return true;
+            }
+            p = (p + 1) & mask;
+        }
+        if (++seenSize > seen.length / 2) {
+            Arrays.fill(seen, 0);
+            seenSize = 1;
+        }
+        seen[p] = hash;
+        tenure = 1;
+        return false;
+    }
+
+    /** The ruin turned code white in iteration iter. */
+    void ruined(int code, int iter) {
+        tabuUntil[code] = iter + tenure;
+    }
+
+    /** True if the fill of iteration iter must not place code. */
+    boolean tabu(int code, int iter) {
+        return tabuUntil[code] >= iter;
+    }
+}
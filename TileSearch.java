@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel large-neighbourhood search over spatial tiles of one solution.
+ *
+ * The grid is cut into square tiles whose interiors are more than 2d apart.
+ * Flipping an interior cell only affects counts within d and the limits of
+ * blacks within d of it, whose windows reach at most 2d from the interior.  So
+ * no two tiles can interact, and each can run ruin-and-rebuild on its own
+ * copy of the interior plus a 2d halo, in which every non-interior cell is
+ * frozen.  Each tile's copy is its own small square SolverState.  Cells beyond
+ * the real grid are padded as RED, which counts as neither colour, just like
+ * the grid edge.  A tile ruins with the solver's Ruin (block operator) and
+ * refills with its GreedyFill, whose dirty region is clipped to the interior.
+ *
+ * All tiles of a round run for the same time in a ForkJoinPool.  After the join
+ * every tile that improved copies its interior back.  The improvements are
+ * independent, so the merged grid gains their sum.  The tiling moves by a
+ * random offset each round so that the gaps between interiors get their turn.
+ */
+final class TileSearch {
+
+    private final int n;
+    private final int d;
+    private final int b;
+    private final int c;
+    private final byte[] orig;
+    private final ForkJoinPool pool;
+    private final int side;    // interior side
+    private final int stride;  // interior side + gap
+
+    TileSearch(int n, int d, int b, int c, byte[] orig, ForkJoinPool pool) {
+        this.n = n;
+        this.d = d;
+        this.b = b;
+        this.c = c;
+        this.orig = orig;
+        this.pool = pool;
+        // About two tiles per worker, but interiors of at least 2d+1 cells.
+        int perSide = Math.max(2, (int) Math.ceil(Math.sqrt(2.0 * pool.getParallelism())));
+        int gap = 2 * d + 1;
+        this.side = Math.max(gap, n / perSide - gap);
+        this.stride = side + gap;
+    }
+
+    /**
+     * Improves grid (cell states, code = i*n+j) in place in rounds of roundMs,
+     * until the deadline or until no round has gained for patienceMs.  Returns
+     * the total gain in score.
+     */
+    long run(byte[] grid, long deadline, long roundMs, long patienceMs, Random rand) throws Exception {
+        long gain = 0, lastGain = System.currentTimeMillis();
+        while (System.currentTimeMillis() + roundMs / 2 < deadline
+               && System.currentTimeMillis() - lastGain < patienceMs) {
+            long roundEnd = Math.min(deadline, System.currentTimeMillis() + roundMs);
+            int oi = rand.nextInt(stride), oj = rand.nextInt(stride);
+            List<Tile> tiles = new ArrayList<>();
+            for (int i0 = oi - stride; i0 < n; i0 += stride)
+                for (int j0 = oj - stride; j0 < n; j0 += stride) {
+                    int r0 = Math.max(0, i0), r1 = Math.min(n, i0 + side) - 1;
+                    int c0 = Math.max(0, j0), c1 = Math.min(n, j0 + side) - 1;
+                    if (r0 <= r1 && c0 <= c1) tiles.add(new Tile(grid, r0, r1, c0, c1, roundEnd, rand.nextLong()));
+                }
+            List<Future<Long>> done = pool.invokeAll(tiles);
+            for (int t = 0; t < tiles.size(); t++) {
+                long g = done.get(t).get();
+                if (g > 0) {
+                    tiles.get(t).mergeInto(grid);
+                    gain += g;
+                    lastGain = System.currentTimeMillis();
+                }
+            }
+        }
+        return gain;
+    }
+
+    /** One tile: interior rows r0..r1, columns c0..c1 of the full grid. */
+    private final class Tile implements Callable<Long> {
+        private final int r0, r1, c0, c1;
+        private final int top, left, m;  // sub-grid origin in the full grid, side
+        private final long end;
+        private final Random rand;
+        private final SolverState st;
+
+        Tile(byte[] grid, int r0, int r1, int c0, int c1, long end, long seed) {
+            this.r0 = r0; this.r1 = r1; this.c0 = c0; this.c1 = c1;
+            this.end = end;
+            this.rand = new Random(seed);
+            this.top = r0 - 2 * d;
+            this.left = c0 - 2 * d;
+            this.m = Math.max(r1 - r0, c1 - c0) + 1 + 4 * d;
+            byte[] fixed = new byte[m * m], cur = new byte[m * m];
+            for (int i = 0; i < m; i++)
+                for (int j = 0; j < m; j++) {
+                    int gi = top + i, gj = left + j, x = i * m + j;
+                    if (gi < 0 || gi >= n || gj < 0 || gj >= n || gi > r1 + 2 * d || gj > c1 + 2 * d) {
+                        fixed[x] = cur[x] = SolverState.RED;
+                        continue;
+                    }
+                    cur[x] = grid[gi * n + gj];
+                    // Outside the interior the current state is frozen as if given.
+                    fixed[x] = interior(gi, gj) ? orig[gi * n + gj] : cur[x];
+                }
+            this.st = new SolverState(m, d, b, c, fixed, false);
+            st.load(cur);
+            st.save();
+        }
+
+        private boolean interior(int gi, int gj) {
+            return gi >= r0 && gi <= r1 && gj >= c0 && gj <= c1;
+        }
+
+        /** Ruin-and-rebuild inside the interior; returns the gain of the best state. */
+        @Override
+        public Long call() {
+            long start = st.score, best = start;
+            // Only interior cells are removable, and the fill only looks at the
+            // interior, so the frozen halo never changes.
+            DirtyRegion dirty = new DirtyRegion(m, 2 * d, r0 - top, r1 - top, c0 - left, c1 - left);
+            GreedyFill fill = new GreedyFill(st, dirty, null, null);
+            Ruin ruin = new Ruin(st, dirty, null, null);
+            if (!fill.run(rand, end, 0)) {
+                st.rollback();
+                return 0L;
+            }
+            if (st.score > best) { best = st.score; st.save(); }
+            for (int iter = 1; System.currentTimeMillis() < end; iter++) {
+                // Only the block: a scatter or band ruin takes out so much of a
+                // tile that its refill almost never wins (case 10 gained 40%
+                // less with all three).
+                ruin.run(Ruin.RECT, rand, iter);
+                if (fill.run(rand, end, iter) && st.score >= best) {
+                    best = st.score;
+                    st.save();
+                } else {
+                    // Worse, or cut short by the deadline.
+                    fill.clear();
+                    st.rollback();
+                }
+            }
+            return best - start;
+        }
+
+        /** Copies the best interior back into the full grid. */
+        void mergeInto(byte[] grid) {
+            for (int i = r0; i <= r1; i++)
+                for (int j = c0; j <= c1; j++)
+                    grid[i * n + j] = st.best[(i - top) * m + (j - left)];
+        }
+    }
+}
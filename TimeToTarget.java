@@ -0,0 +1,122 @@
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Macro-benchmark: runs the parallel solver on fixed cases, thread counts and
+ * seeds for a fixed budget, and compares the runs by how fast they climb.
+ *
+ *   java -Dbarvanje.ttt.cases=6,7 -Dbarvanje.ttt.threads=1,2,4 TimeToTarget [puzzle]
+ *
+ *   barvanje.ttt.cases     cases to run (default 6)
+ *   barvanje.ttt.threads   thread counts (default 1 and all cores)
+ *   barvanje.ttt.seeds     run seeds, as -Dbarvanje.seed (default 1,2,3)
+ *   barvanje.ttt.budgetMs  wall time per run (default 60000)
+ *   barvanje.ttt.out       score-vs-time curves as CSV (default ttt.csv)
+ *   barvanje.target.<case> target score (default: the lowest final score of
+ *                          the case's runs, so every run reaches it)
+ *
+ * Per case and thread count it reports, over the seeds:
+ *   ttt         median ms to reach the target ("-" if half the runs or more never did)
+ *   area        mean of the curve's area, as a fraction of the case's best
+ *               final score held over the whole budget (see ScoreCurve.area)
+ *   efficiency  ttt(p₀)·p₀ / (ttt(p)·p), p₀ the fewest threads; 1 is linear scaling
+ *
+ * The other -Dbarvanje switches apply to every run, so two builds or two
+ * settings compare by running this with the same properties.  With
+ * -Dbarvanje.sliceWork a one-thread run repeats exactly, patience restarts
+ * included (see Seeds), which is what a bisect wants.
+ */
+public class TimeToTarget {
+
+    public static void main(String[] args) throws Exception {
+        PuzzleFile puzzle = PuzzleFile.open(args.length > 0 ? args[0] : "Barvanje.txt");
+        SolverMetrics.register();
+        int cores = Runtime.getRuntime().availableProcessors();
+        long[] cases = longs(System.getProperty("barvanje.ttt.cases", "6"));
+        long[] threads = longs(System.getProperty("barvanje.ttt.threads", cores > 1 ? "1," + cores : "1"));
+        long[] seeds = longs(System.getProperty("barvanje.ttt.seeds", "1,2,3"));
+        long budgetMs = Long.getLong("barvanje.ttt.budgetMs", 60_000L);
+        String out = System.getProperty("barvanje.ttt.out", "ttt.csv");
+        Arrays.sort(threads);
+        System.out.printf("%d case(s) x %d thread count(s) x %d seed(s), %.1f s each%n",
+            cases.length, threads.length, seeds.length, budgetMs / 1000.0);
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(out)))) {
+            csv.println("case,threads,seed,ms,score");
+            for (long caseNum : cases) {
+                GridCase gc = null;
+                for (int k = 0; k < puzzle.size() && gc == null; k++) {
+                    GridCase g = puzzle.read(k);
+                    if (g.caseNum == caseNum) gc = g;
+                }
+                if (gc == null) {
+                    System.out.println(caseNum + " is not in the puzzle file!");
+                    continue;
+                }
+
+                // ── Runs ──────────────────────────────────────────────────────
+                ScoreCurve[][] curves = new ScoreCurve[threads.length][seeds.length];
+                long best = -1, lowest = Long.MAX_VALUE;
+                for (int p = 0; p < threads.length; p++)
+                    for (int s = 0; s < seeds.length; s++) {
+                        // Each run starts from a fresh copy of the input.
+                        GridCase input = new GridCase(gc.caseNum, gc.n, gc.d, gc.b, gc.c, gc.cells.clone());
+                        ScoreCurve curve = BarvanjeParallel.trace(input, (int) threads[p], budgetMs, seeds[s]);
+                        curves[p][s] = curve;
+                        best = Math.max(best, curve.last());
+                        lowest = Math.min(lowest, curve.last());
+                        for (int k = 0; k < curve.size(); k++)
+                            csv.println(caseNum + "," + threads[p] + "," + seeds[s] + "," + curve.ms(k) + "," + curve.score(k));
+                        csv.flush();
+                        System.out.printf("  case %d, %d thread(s), seed %d: %d%n",
+                            caseNum, threads[p], seeds[s], curve.last());
+                    }
+
+                // ── Report ────────────────────────────────────────────────────
+                long target = Long.getLong("barvanje.target." + caseNum, lowest);
+                System.out.printf("Case %d: target %d, best %d%n", caseNum, target, best);
+                System.out.println("  threads  reached        ttt     area  efficiency");
+                double baseTtt = -1;
+                for (int p = 0; p < threads.length; p++) {
+                    double[] ttt = new double[seeds.length];
+                    double area = 0;
+                    int reached = 0;
+                    for (int s = 0; s < seeds.length; s++) {
+                        long t = curves[p][s].timeTo(target);
+                        ttt[s] = t < 0 ? Double.POSITIVE_INFINITY : t;
+                        if (t >= 0) reached++;
+                        area += curves[p][s].area(budgetMs, best) / seeds.length;
+                    }
+                    double median = median(ttt);
+                    if (p == 0) baseTtt = median;
+                    double efficiency = baseTtt * threads[0] / (median * threads[p]);
+                    System.out.printf("  %7d  %3d / %-3d %10s  %7.4f  %10s%n", threads[p], reached, seeds.length,
+                        Double.isInfinite(median) ? "-" : String.format("%.0f ms", median), area,
+                        !Double.isFinite(efficiency) ? "-" : String.format("%.2f", efficiency));
+                }
+                System.out.flush();
+            }
+        }
+        System.out.println("Curves written to " + out);
+    }
+
+    private static double median(double[] v) {
+        double[] s = v.clone();
+        Arrays.sort(s);
+        int m = s.length / 2;
+        return s.length % 2 == 1 ? s[m] : (s[m - 1] + s[m]) / 2;
+    }
+
+    private static long[] longs(String list) {
+        List<Long> values = new ArrayList<>();
+        for (String v : list.split(","))
+            if (!v.isBlank()) values.add(Long.parseLong(v.trim()));
+        long[] a = new long[values.size()];
+        for (int k = 0; k < a.length; k++) a[k] = values.get(k);
+        return a;
+    }
+}
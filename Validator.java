@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Full check of one solved case against its puzzle: every violation, not
+ * just the first, and the recomputed score.
+ *
+ * Window counts come from summed-area tables of the black and white cells,
+ * so each cell costs O(1) whatever d is.  The tables are built in one pass,
+ * then the rows are checked in parallel on the common ForkJoinPool.  Each row
+ * keeps its own violations and pair sum, and they are joined in row order, so
+ * the report does not depend on scheduling.
+ *
+ * Checked: the header matches; red cells are exactly the puzzle's; every
+ * given black is still black; every black has at least b whites and at most c
+ * blacks within distance d.
+ */
+final class Validator {
+
+    /** Violations listed per case; the rest are only counted. */
+    static final int MAX_LISTED = 100;
+
+    static final class Report {
+        final int caseNum;
+        final long score;           // black pairs within d, -1 if the grids don't match up
+        final long violations;
+        final List<String> listed;  // the first MAX_LISTED violations, in row order
+        final long nanos;
+
+        Report(int caseNum, long score, long violations, List<String> listed, long nanos) {
+            this.caseNum = caseNum;
+            this.score = score;
+            this.violations = violations;
+            this.listed = listed;
+            this.nanos = nanos;
+        }
+
+        boolean valid() {
+            return violations == 0;
+        }
+    }
+
+    private Validator() {
+    }
+
+    /** Checks cells (SolverState cell states) as a solution of puzzle. */
+    static Report check(GridCase puzzle, byte[] cells) {
+        return check(puzzle, new GridCase(puzzle.caseNum, puzzle.n, puzzle.d, puzzle.b, puzzle.c, cells));
+    }
+
+    static Report check(GridCase puzzle, GridCase solution) {
+        long t0 = System.nanoTime();
+        int n = puzzle.n, d = puzzle.d, b = puzzle.b, c = puzzle.c;
+        if (solution.n != n || solution.d != d || solution.b != b || solution.c != c) {
+            List<String> listed = new ArrayList<>();
+            listed.add("header " + solution.n + " " + solution.d + " " + solution.b + " " + solution.c
+                       + " does not match the puzzle's " + n + " " + d + " " + b + " " + c);
+            return new Report(puzzle.caseNum, -1, 1, listed, System.nanoTime() - t0);
+        }
+        byte[] g = solution.cells, orig = puzzle.cells;
+
+        // Summed-area tables with a zero border: s[(i+1)*w + j+1] = cells in
+        // rows 0..i, columns 0..j.  Fixed cells are checked on the way.
+        int w = n + 1;
+        int[] blacks = new int[w * w], whites = new int[w * w];
+        List<String> fixed = new ArrayList<>();
+        long fixedCount = 0;
+        for (int i = 0; i < n; i++) {
+            int rowB = 0, rowW = 0;
+            for (int j = 0; j < n; j++) {
+                int x = i * n + j;
+                if (g[x] == SolverState.BLACK) rowB++;
+                else if (g[x] == SolverState.WHITE) rowW++;
+                blacks[(i + 1) * w + j + 1] = blacks[i * w + j + 1] + rowB;
+                whites[(i + 1) * w + j + 1] = whites[i * w + j + 1] + rowW;
+                boolean redChanged = (g[x] == SolverState.RED) != (orig[x] == SolverState.RED);
+                if (redChanged || (orig[x] == SolverState.BLACK && g[x] != SolverState.BLACK)) {
+                    if (fixed.size() < MAX_LISTED)
+                        fixed.add(String.format("[%d, %d] is '%c' in the puzzle but '%c' in the solution",
+                            i, j, SolverState.decode(orig[x]), SolverState.decode(g[x])));
+                    fixedCount++;
+                }
+            }
+        }
+
+        long[] rowPairs = new long[n];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<String>[] rowViolations = new List[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int r0 = Math.max(0, i - d), r1 = Math.min(n - 1, i + d);
+            long pairs = 0;
+            List<String> found = null;
+            for (int j = 0; j < n; j++) {
+                if (g[i * n + j] != SolverState.BLACK) continue;
+                int c0 = Math.max(0, j - d), c1 = Math.min(n - 1, j + d);
+                int nb = window(blacks, w, r0, r1, c0, c1) - 1; // minus the cell itself
+                int nw = window(whites, w, r0, r1, c0, c1);
+                pairs += nb;
+                if (nw < b || nb > c) {
+                    if (found == null) found = new ArrayList<>();
+                    found.add(nw < b
+                        ? String.format("BLACK [%d, %d] has %d white cells around it < %d", i, j, nw, b)
+                        : String.format("BLACK [%d, %d] has %d black cells around it > %d", i, j, nb, c));
+                }
+            }
+            rowPairs[i] = pairs;
+            rowViolations[i] = found;
+        });
+
+        long pairs = 0, count = fixedCount;
+        List<String> listed = new ArrayList<>(fixed);
+        for (int i = 0; i < n; i++) {
+            pairs += rowPairs[i];
+            if (rowViolations[i] == null) continue;
+            count += rowViolations[i].size();
+            for (String v : rowViolations[i])
+                if (listed.size() < MAX_LISTED) listed.add(v);
+        }
+        // Each pair was counted from both ends.
+        return new Report(puzzle.caseNum, pairs / 2, count, listed, System.nanoTime() - t0);
+    }
+
+    /** Cells counted by table s in rows r0..r1, columns c0..c1 (inclusive). */
+    private static int window(int[] s, int w, int r0, int r1, int c0, int c1) {
+        return s[(r1 + 1) * w + c1 + 1] - s[r0 * w + c1 + 1] - s[(r1 + 1) * w + c0] + s[r0 * w + c0];
+    }
+}
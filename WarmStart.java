@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Earlier solutions to start the search from (-Dbarvanje.warmStart=file,...),
+ * e.g. Barvanje_solution.txt and Barvanje_solution2.txt.  These use the
+ * puzzle's own format, with each case under its case number.
+ *
+ * A solution is used for a case only if its header matches the case and
+ * SolverState.solves() accepts it: the same red cells, every given black kept,
+ * all limits held.  If several files hold a valid grid for a case, the one
+ * with the most pairs wins.  Missing or unreadable files are reported and
+ * skipped; the case then starts from the puzzle as before.
+ *
+ * Construction only opens and indexes the files (see PuzzleFile); a case's
+ * grids are decoded and checked the first time start() asks for that case,
+ * and the pick is kept for the case's other threads.
+ */
+final class WarmStart {
+
+    private final List<PuzzleFile> files = new ArrayList<>();
+    private final Map<Integer, byte[]> picked = new HashMap<>();  // caseNum -> best grid, or null
+
+    /** Opens the comma-separated files in spec; an empty spec gives no solutions. */
+    WarmStart(String spec) {
+        if (spec.isEmpty()) return;
+        for (String path : spec.split(",")) {
+            try {
+                files.add(PuzzleFile.open(path.trim()));
+            } catch (IOException | RuntimeException e) {
+                System.out.println("  ! warm start " + path + " skipped: " + e);
+            }
+        }
+    }
+
+    /**
+     * The best valid earlier grid for case caseNum with input orig (cell
+     * states), or null if there is none.
+     */
+    synchronized byte[] start(int caseNum, int n, int d, int b, int c, byte[] orig) {
+        if (picked.containsKey(caseNum)) return picked.get(caseNum);
+        byte[] best = null;
+        long bestScore = -1;
+        for (PuzzleFile file : files) {
+            GridCase s;
+            try {
+                s = find(file, caseNum);
+            } catch (RuntimeException e) {
+                System.out.println("  ! warm start for case " + caseNum + " unreadable, ignored: " + e);
+                continue;
+            }
+            if (s == null) continue;
+            Validator.Report report = Validator.check(new GridCase(caseNum, n, d, b, c, orig), s);
+            if (!report.valid()) {
+                System.out.println("  ! warm start for case " + caseNum + " does not fit the puzzle, ignored");
+                continue;
+            }
+            long score = report.score;
+            if (score > bestScore) {
+                bestScore = score;
+                best = s.cells;
+            }
+        }
+        if (best != null) System.out.println("  warm start for case " + caseNum + ": " + bestScore);
+        picked.put(caseNum, best);
+        return best;
+    }
+
+    /** The first case numbered caseNum in file, or null. */
+    private static GridCase find(PuzzleFile file, int caseNum) {
+        for (int k = 0; k < file.size(); k++)
+            if (file.caseNum(k) == caseNum) return file.read(k);
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Sliding-window engine for the window counts used by the solvers.
+ *
+ * The naive way to build the neighbour counts is a full (2d+1)×(2d+1) scan
+ * per cell, i.e. O(n²·(2d+1)²).  On case 12 (n=1000, d=40) that is ~6.5 billion
+ * cell reads, and the solvers used to pay it again on every patience restart
+ * and every reset to best.  Here the rows are swept top to bottom, keeping
+ * per-column sums over the 2d+1 rows of the current window: moving down a row
+ * adds the row entering the window and drops the one leaving it.  A prefix sum
+ * along those column sums then gives every window sum of the row in two
+ * lookups, so building the counts is O(n²).
+ *
+ * Each row's results go straight into the counters, so the scratch is a few
+ * int[n] rather than whole-grid tables.  One instance owns it for a single n,
+ * so a solver thread can rebuild as often as it likes without allocating.
+ */
+final class WindowCounts {
+
+    private final int n;
+    private final int d;
+
+    // colB[j] = number of '#' in column j within the current row's window rows;
+    // colW is the same for non-'R' cells.  preB / preW are their prefix sums
+    // (preB[j+1] = colB[0] + ... + colB[j]).
+    private final int[] colB;
+    private final int[] colW;
+    private final int[] preB;
+    private final int[] preW;
+    private final int[] rowB;  // one row of results handed to the counters
+    private final int[] rowW;
+
+    WindowCounts(int n, int d) {
+        this.n = n;
+        this.d = d;
+        this.colB = new int[n];
+        this.colW = new int[n];
+        this.preB = new int[n + 1];
+        this.preW = new int[n + 1];
+        this.rowB = new int[n];
+        this.rowW = new int[n];
+    }
+
+    /**
+     * Loads black counts and the non-'R' window sizes for every cell of the grid
+     * into counts.  Counts exclude the cell itself; 'R' cells count as neither
+     * colour.  cell is indexed by i*n+j and holds SolverState cell states.
+     */
+    void count(byte[] cell, NeighbourCounts counts) {
+        java.util.Arrays.fill(colB, 0);
+        java.util.Arrays.fill(colW, 0);
+        // Rows 0..d-1 are in row 0's window before the sweep adds row d.
+        for (int r = 0; r < Math.min(d, n); r++) addRow(cell, r, 1);
+        for (int i = 0; i < n; i++) {
+            if (i + d < n) addRow(cell, i + d, 1);
+            if (i - d - 1 >= 0) addRow(cell, i - d - 1, -1);
+            for (int j = 0; j < n; j++) {
+                preB[j + 1] = preB[j] + colB[j];
+                preW[j + 1] = preW[j] + colW[j];
+            }
+            for (int j = 0; j < n; j++) {
+                int c0 = Math.max(0, j-d), c1 = Math.min(n-1, j+d);
+                int bCnt = preB[c1 + 1] - preB[c0];
+                int wCnt = preW[c1 + 1] - preW[c0];
+                // The window sums include (i,j) itself — take it back out.
+                byte ch = cell[i * n + j];
+                if (ch == SolverState.BLACK) bCnt--;
+                if (ch != SolverState.RED) wCnt--;
+                rowB[j] = bCnt;
+                rowW[j] = wCnt;
+            }
+            counts.loadRow(i, rowB);
+            counts.nonRed.write(i * n, n, rowW);
+        }
+    }
+
+    /** Adds (sign = 1) or removes (sign = -1) row r's cells to the column sums. */
+    private void addRow(byte[] cell, int r, int sign) {
+        int base = r * n;
+        for (int j = 0; j < n; j++) {
+            byte ch = cell[base + j];
+            if (ch == SolverState.BLACK) colB[j] += sign;
+            if (ch != SolverState.RED) colW[j] += sign;
+        }
+    }
+}
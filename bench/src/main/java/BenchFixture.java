@@ -0,0 +1,109 @@
+import java.util.Random;
+
+/**
+ * One case of Barvanje.txt, set up for bench.SolverBench.
+ *
+ * A grid is named "n x d", e.g. 1000x40 for case 12.  The fill is the
+ * solvers' own GreedyFill (phases 1 and 2 of an iteration) and the ruin is
+ * BarvanjeParallel's Ruin, and the fixture uses the solvers' SolverState,
+ * DirtyRegion and SwapSearch, so it measures their cost.  The filled grid is
+ * built once per fixture.  Every reset() reseeds the RNG, so each invocation
+ * does the same work.
+ */
+public final class BenchFixture implements bench.Fixture {
+
+    // Blacks examined per swap pass.  A pass to convergence cascades over the
+    // whole grid, which takes minutes on the large cases; the solver itself
+    // time-boxes it.
+    private static final long SWAP_BUDGET = 20_000;
+
+    private final GridCase gc;
+    private final SolverState st;
+    private final byte[] filled;
+    private final GridCase filledCase;
+    private final DirtyRegion dirty;
+    private final GreedyFill fill;
+    private final SwapSearch swaps;
+    private final Ruin ruin;
+    private final long seed;
+    private Random rand;
+
+    private BenchFixture(GridCase gc, long seed) {
+        this.gc = gc;
+        this.seed = seed;
+        int n = gc.n, d = gc.d;
+        this.st = new SolverState(n, d, gc.b, gc.c, gc.cells, false);
+        this.dirty = new DirtyRegion(n, 2 * d);
+        this.fill = new GreedyFill(st, dirty, null, null);
+        this.swaps = new SwapSearch(st, dirty);
+        this.ruin = new Ruin(st, dirty, swaps, null);
+        reset(false);
+        greedyFill();
+        this.filled = st.cell.clone();
+        this.filledCase = new GridCase(gc.caseNum, n, d, gc.b, gc.c, filled);
+    }
+
+    /** The first case in path whose size and reach match grid ("n x d"). */
+    public static bench.Fixture of(String path, String grid, long seed) throws Exception {
+        String[] nd = grid.split("x");
+        int n = Integer.parseInt(nd[0]), d = Integer.parseInt(nd[1]);
+        PuzzleFile puzzle = PuzzleFile.open(path);
+        for (int k = 0; k < puzzle.size(); k++) {
+            GridCase gc = puzzle.read(k);
+            if (gc.n == n && gc.d == d) return new BenchFixture(gc, seed);
+        }
+        throw new IllegalArgumentException("no case with n=" + n + " and d=" + d + " in " + path);
+    }
+
+    @Override
+    public void reset(boolean useFilled) {
+        st.load(useFilled ? filled : gc.cells);
+        st.save();
+        fill.clear();
+        // The filled grid is as after a solver fill: nothing dirty, and no look
+        // bits until a ruin reports one.  The input is as a fresh SolverState.
+        swaps.lookNone();
+        if (useFilled) {
+            dirty.clear();
+        } else {
+            dirty.all();
+            swaps.lookAll();
+        }
+        rand = new Random(seed);
+    }
+
+    @Override
+    public long greedyFill() {
+        fill.run(rand, Long.MAX_VALUE, 0);
+        return st.score;
+    }
+
+    @Override
+    public long ruinRebuild() {
+        // One iteration per ruin operator, in the solver's rotation.
+        for (int type = 0; type < Ruin.TYPES; type++) {
+            ruin.run(type, rand, 0);
+            greedyFill();
+            swaps.run(Long.MAX_VALUE, SWAP_BUDGET);
+        }
+        return st.score;
+    }
+
+    @Override
+    public long swapSweep() {
+        swaps.lookAll();
+        swaps.run(Long.MAX_VALUE, SWAP_BUDGET);
+        return st.score;
+    }
+
+    @Override
+    public long countInit() {
+        st.load(filled);
+        return st.score;
+    }
+
+    @Override
+    public long validate() {
+        return Validator.check(gc, filledCase).score;
+    }
+}
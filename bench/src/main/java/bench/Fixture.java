@@ -0,0 +1,35 @@
+package bench;
+
+/**
+ * The solver operations SolverBench measures, on one case.
+ *
+ * The solver classes are package-private in the default package, and JMH
+ * does not allow benchmarks there.  BenchFixture (default package) implements
+ * this interface, and SolverBench loads it by name.
+ */
+public interface Fixture {
+
+    /**
+     * Working grid := the input (filled = false), all of it dirty, or the
+     * greedy-filled grid, nothing dirty; the RNG is reseeded.
+     */
+    void reset(boolean filled);
+
+    /** Greedy fill of the dirty region until nothing fits; returns the score. */
+    long greedyFill();
+
+    /**
+     * Three solver iterations, one per ruin operator (rectangle, scatter,
+     * band): ruin, refill, bounded swap pass; returns the score.
+     */
+    long ruinRebuild();
+
+    /** A bounded swap pass over the filled grid, all look bits set; returns the score. */
+    long swapSweep();
+
+    /** Rebuilds counts, constraint index and score from the filled grid. */
+    long countInit();
+
+    /** Validates the filled grid; returns the recomputed score. */
+    long validate();
+}
@@ -0,0 +1,112 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The solver's hot paths, one case per grid:
+ *
+ *   greedyFill   phases 1–2 on the input grid
+ *   ruinRebuild  ruin-and-recreate on the filled grid, once per ruin operator
+ *   swapSweep    a swap pass over the filled grid
+ *   countInit    SolverState.load: counts, constraint index, score
+ *   validate     Validator.check of the filled grid
+ *
+ * The fixture is loaded once per trial.  greedyFill, ruinRebuild and
+ * swapSweep change the grid, so their invocations start from the same grid
+ * and RNG seed through a per-invocation reset (Input or Filled), and runs
+ * compare across builds.  Their work per invocation is milliseconds to
+ * seconds, so the reset is not in the timings.  countInit and validate leave
+ * the filled grid as it was and run without a reset.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SolverBench {
+
+    /** One case of the puzzle file, loaded and filled once per trial. */
+    @State(Scope.Thread)
+    public static class Case {
+
+        /** "n x d" of a case in the puzzle file, e.g. 1000x40 for case 12. */
+        @Param({"100x13", "300x4", "300x13", "1000x13", "1000x40"})
+        public String grid;
+
+        /** RNG seed of the fill order and the ruins. */
+        @Param("1")
+        public long seed;
+
+        Fixture fixture;
+
+        @Setup(Level.Trial)
+        public void load() throws Exception {
+            String path = System.getProperty("barvanje.puzzle", "Barvanje.txt");
+            fixture = (Fixture) Class.forName("BenchFixture")
+                .getMethod("of", String.class, String.class, long.class)
+                .invoke(null, path, grid, seed);
+        }
+    }
+
+    /** Before each invocation: the input grid, all of it dirty. */
+    @State(Scope.Thread)
+    public static class Input {
+        Fixture fixture;
+
+        @Setup(Level.Invocation)
+        public void reset(Case c) {
+            fixture = c.fixture;
+            fixture.reset(false);
+        }
+    }
+
+    /** Before each invocation: the greedy-filled grid, nothing dirty. */
+    @State(Scope.Thread)
+    public static class Filled {
+        Fixture fixture;
+
+        @Setup(Level.Invocation)
+        public void reset(Case c) {
+            fixture = c.fixture;
+            fixture.reset(true);
+        }
+    }
+
+    @Benchmark
+    public long greedyFill(Input grid) {
+        return grid.fixture.greedyFill();
+    }
+
+    @Benchmark
+    public long ruinRebuild(Filled grid) {
+        return grid.fixture.ruinRebuild();
+    }
+
+    @Benchmark
+    public long swapSweep(Filled grid) {
+        return grid.fixture.swapSweep();
+    }
+
+    @Benchmark
+    public long countInit(Case c) {
+        return c.fixture.countInit();
+    }
+
+    @Benchmark
+    public long validate(Case c) {
+        return c.fixture.validate();
+    }
+}